@@ -0,0 +1,80 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Map;
+
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilter;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+
+/**
+ * Exposes the package private {@link BenchmarkFilter}, {@link InMemoryFilterChain}
+ * and {@link SyntheticCalls} to microbenchmarks.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class BenchmarkFilters {
+
+    private BenchmarkFilters() {
+
+    }
+
+    /**
+     * Creates an initialized {@link BenchmarkFilter} using the default configuration
+     * and a {@link BenchmarkService} which discards all records.
+     *
+     * @return a new filter
+     * @throws LifecycleException if initialization failed
+     */
+    public static IpcCallFilter benchmarkFilter() throws LifecycleException {
+        final BenchmarkFilter filter = new BenchmarkFilter(new BenchmarkService() {
+
+            @Override
+            public void log(BenchmarkRecord record) {
+
+            }
+
+        }, new BenchmarkStatistics());
+        filter.setJmx(false);
+        filter.initialize();
+        return filter;
+    }
+
+    /**
+     * Creates a chain which passes calls through the given filters and executes the command.
+     *
+     * @param filters the filters, in call order
+     * @return a new chain
+     */
+    public static IpcCallFilterChain chain(IpcCallFilter... filters) {
+        return new InMemoryFilterChain(filters);
+    }
+
+    /**
+     * Creates a detached call with the given arguments.
+     *
+     * @param arguments the arguments
+     * @return a new call
+     */
+    public static IpcCall call(Map<String, ?> arguments) {
+        return SyntheticCalls.of(arguments);
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.jmh;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableMap;
+
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilter;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.util.benchmark.BenchmarkFilters;
+import de.cosmocode.palava.util.qa.QualityFilters;
+
+/**
+ * Measures the per-call overhead of a single filter in an in-memory filter chain.
+ * The {@code none} filter runs the bare chain and serves as baseline.
+ *
+ * <p>
+ *   Run all benchmarks with {@code mvn -Pjmh test-compile exec:exec}. The gc profiler
+ *   is enabled by default and reports the allocation rate per operation. Custom
+ *   JMH options can be passed using {@code -Djmh.args="..."}.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    @Param({"none", "benchmark", "unused", "deprecation", "description"})
+    private String filter;
+
+    private ScheduledExecutorService scheduler;
+
+    private IpcCallFilterChain chain;
+
+    private IpcCall call;
+
+    private IpcCommand command;
+
+    /**
+     * Creates the chain for the configured filter.
+     *
+     * @throws LifecycleException if the filter could not be initialized
+     */
+    @Setup
+    public void setUp() throws LifecycleException {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        call = BenchmarkFilters.call(ImmutableMap.of(SyntheticCommand.KEY, "value"));
+        command = new SyntheticCommand();
+        chain = create();
+    }
+
+    private IpcCallFilterChain create() throws LifecycleException {
+        if ("none".equals(filter)) {
+            return BenchmarkFilters.chain();
+        } else {
+            return BenchmarkFilters.chain(createFilter());
+        }
+    }
+
+    private IpcCallFilter createFilter() throws LifecycleException {
+        if ("benchmark".equals(filter)) {
+            return BenchmarkFilters.benchmarkFilter();
+        } else if ("unused".equals(filter)) {
+            return QualityFilters.unusedFilter(SyntheticCommand.class.getPackage().getName(), scheduler);
+        } else if ("deprecation".equals(filter)) {
+            return QualityFilters.deprecationFilter();
+        } else if ("description".equals(filter)) {
+            return QualityFilters.descriptionFilter();
+        } else {
+            throw new IllegalArgumentException(String.format("Unknown filter %s", filter));
+        }
+    }
+
+    /**
+     * Shuts down the scheduler.
+     */
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Passes a call through the chain on a single thread.
+     *
+     * @return the result
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Benchmark
+    @Threads(1)
+    public Map<String, Object> single() throws IpcCommandExecutionException {
+        return chain.filter(call, command);
+    }
+
+    /**
+     * Passes calls through the same chain on as many threads as there are cores.
+     *
+     * @return the result
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Map<String, Object> contended() throws IpcCommandExecutionException {
+        return chain.filter(call, command);
+    }
+
+}
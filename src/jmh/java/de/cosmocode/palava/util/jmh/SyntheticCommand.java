@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.jmh;
+
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * A trivial {@link IpcCommand} which copies a single argument into the result.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class SyntheticCommand implements IpcCommand {
+
+    public static final String KEY = "key";
+
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        result.put(KEY, call.getArguments().get(KEY));
+    }
+
+}
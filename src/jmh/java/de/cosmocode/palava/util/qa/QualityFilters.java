@@ -0,0 +1,69 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+
+import de.cosmocode.palava.ipc.IpcCallFilter;
+
+/**
+ * Exposes the package private quality assurance filters to microbenchmarks.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class QualityFilters {
+
+    private QualityFilters() {
+
+    }
+
+    /**
+     * Creates an {@link UnusedFilter} which tracks all commands in the given package.
+     * Commands are listed in the background using the given scheduler, the periodic
+     * report is not scheduled.
+     *
+     * @param packageName the package to scan for commands
+     * @param scheduler the scheduler
+     * @return a new filter
+     */
+    public static IpcCallFilter unusedFilter(String packageName, ScheduledExecutorService scheduler) {
+        final UnusedFilter filter = new UnusedFilter(Collections.singletonList(packageName), scheduler);
+        filter.list();
+        return filter;
+    }
+
+    /**
+     * Creates a {@link DeprecationFilter} running in {@link QualityMode#WARNING} mode.
+     *
+     * @return a new filter
+     */
+    public static IpcCallFilter deprecationFilter() {
+        return new DeprecationFilter();
+    }
+
+    /**
+     * Creates a {@link DescriptionFilter} running in {@link QualityMode#WARNING} mode.
+     *
+     * @return a new filter
+     */
+    public static IpcCallFilter descriptionFilter() {
+        return new DescriptionFilter();
+    }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * An online estimate of the p99 latency of a single command, used by the
+ * {@link BenchmarkFilter} in adaptive mode.
+ *
+ * <p>
+ *   The estimate is calibrated once from the command's latency histogram after
+ *   a warmup phase. Afterwards every measured call moves it by a small relative
+ *   step: up if the call was slower, down if it was faster, weighted so that
+ *   the estimate settles where 1% of all calls are slower. Updates are not
+ *   atomic, which is fine for a stochastic estimate and keeps them cheap.
+ * </p>
+ *
+ * <p>
+ *   The estimate at the end of the warmup serves as reference. Once the estimate
+ *   exceeds the reference by the configured drift factor, a warning is logged
+ *   and the reference is moved to the current estimate.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class AdaptiveBaseline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveBaseline.class);
+
+    private static final double QUANTILE = 0.99;
+
+    private static final double STEP = 0.005;
+
+    private static final double UP = 1.0 + STEP * QUANTILE;
+
+    private static final double DOWN = 1.0 - STEP * (1.0 - QUANTILE);
+
+    private final Class<? extends IpcCommand> type;
+
+    private final AtomicLong drifts = new AtomicLong();
+
+    private volatile boolean calibrated;
+
+    private volatile double estimate;
+
+    private volatile double reference;
+
+    AdaptiveBaseline(Class<? extends IpcCommand> type) {
+        this.type = type;
+    }
+
+    /**
+     * Updates the estimate using the given call.
+     *
+     * @param nanos the measured time in nanoseconds
+     * @param statistics the statistics of the command, used for calibration
+     * @param warmup the number of sampled calls required before calibrating
+     * @param driftFactor the factor by which the estimate may grow before a drift is reported
+     */
+    void update(long nanos, CommandStatistics statistics, long warmup, double driftFactor) {
+        if (!calibrated) {
+            if (statistics.getSampledCount() >= warmup) {
+                calibrate(nanos, statistics.snapshot());
+            }
+            return;
+        }
+
+        final double current = estimate;
+        final double next = nanos > current ? current * UP : current * DOWN;
+        estimate = next;
+
+        if (next > reference * driftFactor) {
+            drift();
+        }
+    }
+
+    private synchronized void calibrate(long nanos, HistogramSnapshot snapshot) {
+        if (calibrated) {
+            return;
+        }
+        // the histogram may have been reset, fall back to the current call
+        final double initial = Math.max(1.0, Math.max(snapshot.getPercentile(QUANTILE * 100.0), nanos));
+        estimate = initial;
+        reference = initial;
+        calibrated = true;
+        LOG.debug("Calibrated p99 baseline of {} to {}ns", type.getName(), (long) initial);
+    }
+
+    private synchronized void drift() {
+        final double current = estimate;
+        final double previous = reference;
+        if (current <= previous) {
+            return;
+        }
+        reference = current;
+        drifts.incrementAndGet();
+        LOG.warn("p99 baseline of {} drifted up from {}ns to {}ns", new Object[] {
+            type.getName(), (long) previous, (long) current
+        });
+    }
+
+    /**
+     * Writes the calibration state of this baseline.
+     *
+     * @param output the output to write to
+     * @throws IOException if writing failed
+     */
+    synchronized void writeTo(DataOutput output) throws IOException {
+        output.writeBoolean(calibrated);
+        output.writeDouble(estimate);
+        output.writeDouble(reference);
+    }
+
+    /**
+     * Reads a baseline written by {@link #writeTo(DataOutput)}. The read state is only
+     * used if this baseline has not been calibrated yet.
+     *
+     * @param input the input to read from
+     * @throws IOException if reading failed
+     */
+    synchronized void mergeFrom(DataInput input) throws IOException {
+        final boolean restoredCalibrated = input.readBoolean();
+        final double restoredEstimate = input.readDouble();
+        final double restoredReference = input.readDouble();
+
+        if (restoredCalibrated && !calibrated && restoredEstimate >= 1.0 && restoredReference >= 1.0) {
+            estimate = restoredEstimate;
+            reference = restoredReference;
+            calibrated = true;
+        }
+    }
+
+    /**
+     * Computes the slow-call limit for the given multiplier.
+     *
+     * @param multiplier the multiple of the estimated p99 above which calls are slow
+     * @return the limit in nanoseconds or {@link CommandStatistics#NO_THRESHOLD} if not calibrated yet
+     */
+    long limit(double multiplier) {
+        return calibrated ? (long) (estimate * multiplier) : CommandStatistics.NO_THRESHOLD;
+    }
+
+    /**
+     * Returns whether the warmup has been completed.
+     *
+     * @return true if calibrated, false otherwise
+     */
+    public boolean isCalibrated() {
+        return calibrated;
+    }
+
+    /**
+     * Returns the current p99 estimate.
+     *
+     * @return the estimate in nanoseconds or 0 if not calibrated yet
+     */
+    public long getEstimate() {
+        return (long) estimate;
+    }
+
+    /**
+     * Returns the reference drifts are detected against.
+     *
+     * @return the reference in nanoseconds or 0 if not calibrated yet
+     */
+    public long getReference() {
+        return (long) reference;
+    }
+
+    /**
+     * Returns the number of reported drifts.
+     *
+     * @return the number of drifts
+     */
+    public long getDriftCount() {
+        return drifts.get();
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * Specifies where {@link BenchmarkStatistics} keep histogram buckets and counters.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public enum AggregateStorage {
+
+    /**
+     * Aggregates are kept in atomic arrays on the java heap.
+     */
+    HEAP,
+
+    /**
+     * Aggregates are kept in direct memory outside of the java heap, so they
+     * neither add to the live set nor have to be traced by the garbage collector.
+     * Falls back to {@link #HEAP} if direct memory can't be accessed atomically
+     * on the running virtual machine.
+     */
+    OFF_HEAP;
+
+}
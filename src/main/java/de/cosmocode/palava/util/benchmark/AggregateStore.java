@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * Allocates the {@link AtomicLongCells} which back histograms and windows
+ * of the {@link BenchmarkStatistics}. Cells are never released, the number
+ * of allocations is bounded by the number of commands.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+interface AggregateStore {
+
+    /**
+     * Allocates zeroed cells.
+     *
+     * @param length the number of cells
+     * @return new cells
+     */
+    AtomicLongCells allocate(int length);
+
+    /**
+     * Returns the number of bytes occupied by all cells allocated so far.
+     *
+     * @return the footprint in bytes
+     */
+    long getFootprint();
+
+    /**
+     * Returns the kind of storage used by this store.
+     *
+     * @return the storage
+     */
+    AggregateStorage getStorage();
+
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.concurrent.Background;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * A {@link BenchmarkService} which copies all records into a bounded buffer
+ * and passes them in batches to the {@link Asynchronous} delegate using
+ * the {@link Background} scheduler. This keeps expensive formatting and
+ * blocking I/O off the IPC threads. Records are {@link BenchmarkRecord#detach() detached}
+ * only once they are known to fit into the buffer, so dropping a record doesn't allocate.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class AsyncBenchmarkService implements BenchmarkService, Initializable, Disposable, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncBenchmarkService.class);
+
+    private final BenchmarkService delegate;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int capacity = DEFAULT_CAPACITY;
+
+    private int batchSize = 64;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    private long period = 100L;
+
+    private TimeUnit periodUnit = TimeUnit.MILLISECONDS;
+
+    // created up front, so records logged before initialization are buffered
+    private BlockingQueue<BenchmarkRecord> queue = new ArrayBlockingQueue<BenchmarkRecord>(DEFAULT_CAPACITY);
+
+    private ScheduledFuture<?> future;
+
+    private long reportedDrops;
+
+    @Inject
+    AsyncBenchmarkService(@Asynchronous BenchmarkService delegate,
+        @Background ScheduledExecutorService scheduler) {
+        this.delegate = Preconditions.checkNotNull(delegate, "Delegate");
+        this.scheduler = Preconditions.checkNotNull(scheduler, "Scheduler");
+    }
+
+    @Inject(optional = true)
+    void setCapacity(@Named(AsyncBenchmarkServiceConfig.CAPACITY) int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        Preconditions.checkState(queue.isEmpty(), "Capacity can't be changed while records are buffered");
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<BenchmarkRecord>(capacity);
+    }
+
+    @Inject(optional = true)
+    void setBatchSize(@Named(AsyncBenchmarkServiceConfig.BATCH_SIZE) int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    @Inject(optional = true)
+    void setOverflowPolicy(@Named(AsyncBenchmarkServiceConfig.OVERFLOW_POLICY) OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy, "OverflowPolicy");
+    }
+
+    @Inject(optional = true)
+    void setPeriod(@Named(AsyncBenchmarkServiceConfig.PERIOD) long period) {
+        Preconditions.checkArgument(period > 0, "Period must be positive");
+        this.period = period;
+    }
+
+    @Inject(optional = true)
+    void setPeriodUnit(@Named(AsyncBenchmarkServiceConfig.PERIOD_UNIT) TimeUnit periodUnit) {
+        this.periodUnit = Preconditions.checkNotNull(periodUnit, "PeriodUnit");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        this.future = scheduler.scheduleWithFixedDelay(this, period, period, periodUnit);
+    }
+
+    @Override
+    public void log(BenchmarkRecord record) {
+        if (!reject()) {
+            offer(record.detach());
+        }
+    }
+
+    /**
+     * Drops the next record up front if the buffer is full and the {@link OverflowPolicy}
+     * is {@link OverflowPolicy#DROP}, before it is copied.
+     *
+     * @return true if the record has been dropped, false if it should be offered
+     */
+    boolean reject() {
+        if (overflowPolicy == OverflowPolicy.DROP && queue.remainingCapacity() == 0) {
+            dropped.incrementAndGet();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Adds the given detached record to the buffer, according to the configured {@link OverflowPolicy}.
+     *
+     * @param record the record
+     */
+    void offer(BenchmarkRecord record) {
+        switch (overflowPolicy) {
+            case DROP: {
+                if (queue.offer(record)) {
+                    submitted.incrementAndGet();
+                } else {
+                    dropped.incrementAndGet();
+                }
+                break;
+            }
+            case BLOCK: {
+                try {
+                    queue.put(record);
+                    submitted.incrementAndGet();
+                } catch (InterruptedException e) {
+                    dropped.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            }
+            default: {
+                throw new AssertionError(overflowPolicy);
+            }
+        }
+    }
+
+    /**
+     * Drains the buffer in batches and passes all records to the delegate.
+     * A single run delivers at most one buffer capacity worth of records.
+     */
+    @Override
+    public synchronized void run() {
+        final List<BenchmarkRecord> batch = Lists.newArrayListWithCapacity(batchSize);
+        int remaining = capacity;
+
+        while (remaining > 0) {
+            final int drained = queue.drainTo(batch, Math.min(batchSize, remaining));
+            if (drained == 0) {
+                break;
+            }
+            remaining -= drained;
+
+            for (BenchmarkRecord record : batch) {
+                try {
+                    delegate.log(record);
+                    delivered.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    LOG.warn("Delegate " + delegate + " failed to log benchmark record", e);
+                }
+            }
+
+            batch.clear();
+        }
+
+        final long drops = dropped.get();
+        if (drops > reportedDrops) {
+            LOG.warn("Dropped {} benchmark records due to a full buffer", drops - reportedDrops);
+            reportedDrops = drops;
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (future != null) {
+            future.cancel(false);
+        }
+        run();
+    }
+
+    /**
+     * Returns the number of records which have been accepted into the buffer.
+     *
+     * @return the number of submitted records
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Returns the number of records which have been discarded because the buffer was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of records which have been passed to the delegate successfully.
+     *
+     * @return the number of delivered records
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Returns the number of records the delegate failed to process.
+     *
+     * @return the number of failed records
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of records currently waiting in the buffer.
+     *
+     * @return the current buffer size
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+}
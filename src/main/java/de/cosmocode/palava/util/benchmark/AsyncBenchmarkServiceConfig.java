@@ -0,0 +1,43 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * Static constant holder class for async benchmark config key names.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class AsyncBenchmarkServiceConfig {
+
+    public static final String PREFIX = BenchmarkConfig.PREFIX + "async.";
+
+    public static final String CAPACITY = PREFIX + "capacity";
+
+    public static final String BATCH_SIZE = PREFIX + "batchSize";
+
+    public static final String OVERFLOW_POLICY = PREFIX + "overflowPolicy";
+
+    public static final String PERIOD = PREFIX + "period";
+
+    public static final String PERIOD_UNIT = PREFIX + "periodUnit";
+
+    private AsyncBenchmarkServiceConfig() {
+
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Binds {@link BenchmarkService} to {@link AsyncBenchmarkService}. The actual
+ * service has to be bound using the {@link Asynchronous} binding annotation, e.g.
+ * by installing {@code LogBenchmarkServiceModule.annotatedWith(Asynchronous.class)}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class AsyncBenchmarkServiceModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(AsyncBenchmarkService.class).in(Singleton.class);
+        binder.bind(BenchmarkService.class).to(AsyncBenchmarkService.class);
+    }
+
+}
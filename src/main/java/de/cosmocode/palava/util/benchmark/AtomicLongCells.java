@@ -0,0 +1,78 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * A fixed number of long cells which can be updated atomically.
+ * Allocated by an {@link AggregateStore}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+interface AtomicLongCells {
+
+    /**
+     * Returns the number of cells.
+     *
+     * @return the length
+     */
+    int length();
+
+    /**
+     * Reads the given cell with volatile semantics.
+     *
+     * @param index the cell index
+     * @return the current value
+     */
+    long get(int index);
+
+    /**
+     * Writes the given cell with volatile semantics.
+     *
+     * @param index the cell index
+     * @param value the new value
+     */
+    void set(int index, long value);
+
+    /**
+     * Atomically adds the given delta to the given cell.
+     *
+     * @param index the cell index
+     * @param delta the value to add
+     */
+    void add(int index, long delta);
+
+    /**
+     * Atomically sets the given cell and returns the old value.
+     *
+     * @param index the cell index
+     * @param value the new value
+     * @return the previous value
+     */
+    long getAndSet(int index, long value);
+
+    /**
+     * Atomically sets the given cell if it currently holds the expected value.
+     *
+     * @param index the cell index
+     * @param expect the expected value
+     * @param update the new value
+     * @return true if successful, false if the current value was not the expected one
+     */
+    boolean compareAndSet(int index, long expect, long update);
+
+}
@@ -30,6 +30,38 @@ public final class BenchmarkConfig {
     public static final String THRESHOLD = PREFIX + "threshold";
 
     public static final String THRESHOLD_UNIT = PREFIX + "thresholdUnit";
+
+    public static final String SAMPLING_MODE = PREFIX + "samplingMode";
+
+    public static final String SAMPLE_RATE = PREFIX + "sampleRate";
+
+    public static final String MAX_RECORDS_PER_SECOND = PREFIX + "maxRecordsPerSecond";
+
+    public static final String ALWAYS_RECORD_SLOW = PREFIX + "alwaysRecordSlow";
+
+    public static final String MEASURE_RESOURCES = PREFIX + "measureResources";
+
+    public static final String ENABLE_THREAD_MEASUREMENT = PREFIX + "enableThreadMeasurement";
+
+    public static final String JMX = PREFIX + "jmx";
+
+    public static final String SLOWEST_CALLS = PREFIX + "slowestCalls";
+
+    public static final String ADAPTIVE = PREFIX + "adaptive";
+
+    public static final String ADAPTIVE_MULTIPLIER = PREFIX + "adaptiveMultiplier";
+
+    public static final String ADAPTIVE_WARMUP = PREFIX + "adaptiveWarmup";
+
+    public static final String DRIFT_FACTOR = PREFIX + "driftFactor";
+
+    public static final String STATE_FILE = PREFIX + "stateFile";
+
+    public static final String HEAVY_HITTER_ARGUMENTS = PREFIX + "heavyHitterArguments";
+
+    public static final String HEAVY_HITTERS = PREFIX + "heavyHitters";
+
+    public static final String AGGREGATE_STORAGE = PREFIX + "aggregateStorage";
     
     private BenchmarkConfig() {
         
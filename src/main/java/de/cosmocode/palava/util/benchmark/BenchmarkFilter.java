@@ -17,9 +17,11 @@
 package de.cosmocode.palava.util.benchmark;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import de.cosmocode.palava.core.lifecycle.Disposable;
 import de.cosmocode.palava.core.lifecycle.Initializable;
 import de.cosmocode.palava.core.lifecycle.LifecycleException;
 import de.cosmocode.palava.ipc.IpcCall;
@@ -28,69 +30,384 @@ import de.cosmocode.palava.ipc.IpcCallFilterChain;
 import de.cosmocode.palava.ipc.IpcCommand;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 
-import java.util.Collections;
+import java.lang.management.ManagementFactory;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * An {@link IpcCallFilter} which measures the time the filter chain
- * needs to filter and execute the given command. This filter
- * delegates the log work to an instance of {@link BenchmarkService}.
+ * needs to filter and execute the given command.
+ *
+ * <p>
+ *   Every sampled call is recorded in the {@link BenchmarkStatistics}. Which calls
+ *   are sampled is controlled by the configured {@link SamplingMode}.
+ * </p>
+ *
+ * <p>
+ *   Calls exceeding the threshold are passed to an instance of {@link BenchmarkService}
+ *   and retained in the per-command {@link SlowestCalls}. If heavy hitter arguments are
+ *   configured, their values are counted in the per-command {@link HeavyHitters}.
+ *   Commands may override the configured threshold using {@link Threshold}. In adaptive
+ *   mode, commands without a declared threshold are compared against a multiple of their
+ *   own learned p99 latency (see {@link AdaptiveBaseline}) instead of the global threshold,
+ *   which only applies during warmup.
+ * </p>
+ *
+ * <p>
+ *   If {@link BenchmarkConfig#MEASURE_RESOURCES} is set, the cpu time and allocated bytes
+ *   of the calling thread are measured as well. The jvm's thread measurement is only switched
+ *   on if {@link BenchmarkConfig#ENABLE_THREAD_MEASUREMENT} is set too, otherwise the values
+ *   are only available if it has been enabled elsewhere.
+ * </p>
+ *
+ * <p>
+ *   If the {@link ExecutionTimeFilterModule} is installed, the measured time is split into
+ *   time spent in downstream filters and time spent executing the command.
+ * </p>
+ *
+ * <p>
+ *   Every measured call opens a root {@link Span}, so slow calls are reported with the
+ *   {@link TimingTree} of all {@link Spans} opened by filters and commands further down.
+ * </p>
+ *
+ * <p>
+ *   Statistics and the runtime-tunable settings are exposed using the {@link BenchmarkFilterMXBean}.
+ * </p>
  *
  * @author Willi Schoenborn
  */
 @Singleton
-final class BenchmarkFilter implements IpcCallFilter, Initializable {
+final class BenchmarkFilter implements IpcCallFilter, BenchmarkFilterMXBean, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BenchmarkFilter.class);
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1L);
 
     private final BenchmarkService service;
 
-    private boolean active = true;
-    private long threshold = 100;
-    private TimeUnit thresholdUnit = TimeUnit.MILLISECONDS;
+    private final BenchmarkStatistics statistics;
+
+    private volatile BenchmarkSettings settings = BenchmarkSettings.DEFAULT;
+
+    private SamplingMode samplingMode = SamplingMode.ALL;
+    private int sampleRate = 100;
+    private int maxRecordsPerSecond = 100;
+    private boolean alwaysRecordSlow = true;
+    private boolean measureResources;
+    private boolean enableThreadMeasurement;
+    private boolean jmx = true;
+
+    private boolean adaptive;
+    private double adaptiveMultiplier = 3.0;
+    private long adaptiveWarmup = 1000L;
+    private double driftFactor = 2.0;
 
-    private long thresholdInMillis = thresholdUnit.toMillis(threshold);
+    private ResourceMeter meter;
 
     @Inject
-    public BenchmarkFilter(BenchmarkService service) {
+    public BenchmarkFilter(BenchmarkService service, BenchmarkStatistics statistics) {
         this.service = Preconditions.checkNotNull(service, "Service");
+        this.statistics = Preconditions.checkNotNull(statistics, "Statistics");
+    }
+
+    @Inject(optional = true)
+    @Override
+    public synchronized void setActive(@Named(BenchmarkConfig.ACTIVE) boolean active) {
+        this.settings = settings.withActive(active);
+    }
+
+    @Inject(optional = true)
+    public synchronized void setThreshold(@Named(BenchmarkConfig.THRESHOLD) long threshold) {
+        this.settings = settings.withThreshold(threshold, settings.getThresholdUnit());
+    }
+
+    @Inject(optional = true)
+    public synchronized void setThresholdUnit(@Named(BenchmarkConfig.THRESHOLD_UNIT) TimeUnit thresholdUnit) {
+        this.settings = settings.withThreshold(settings.getThreshold(), thresholdUnit);
+    }
+
+    @Inject(optional = true)
+    public void setSamplingMode(@Named(BenchmarkConfig.SAMPLING_MODE) SamplingMode samplingMode) {
+        this.samplingMode = Preconditions.checkNotNull(samplingMode, "SamplingMode");
+    }
+
+    @Inject(optional = true)
+    public void setSampleRate(@Named(BenchmarkConfig.SAMPLE_RATE) int sampleRate) {
+        Preconditions.checkArgument(sampleRate > 0, "Sample rate must be positive");
+        this.sampleRate = sampleRate;
+    }
+
+    @Inject(optional = true)
+    public void setMaxRecordsPerSecond(@Named(BenchmarkConfig.MAX_RECORDS_PER_SECOND) int maxRecordsPerSecond) {
+        Preconditions.checkArgument(maxRecordsPerSecond > 0, "Max records per second must be positive");
+        this.maxRecordsPerSecond = maxRecordsPerSecond;
+    }
+
+    @Inject(optional = true)
+    public void setAlwaysRecordSlow(@Named(BenchmarkConfig.ALWAYS_RECORD_SLOW) boolean alwaysRecordSlow) {
+        this.alwaysRecordSlow = alwaysRecordSlow;
+    }
+
+    @Inject(optional = true)
+    public void setMeasureResources(@Named(BenchmarkConfig.MEASURE_RESOURCES) boolean measureResources) {
+        this.measureResources = measureResources;
     }
 
     @Inject(optional = true)
-    public void setActive(@Named(BenchmarkConfig.ACTIVE) boolean active) {
-        this.active = active;
+    public void setEnableThreadMeasurement(
+        @Named(BenchmarkConfig.ENABLE_THREAD_MEASUREMENT) boolean enableThreadMeasurement) {
+        this.enableThreadMeasurement = enableThreadMeasurement;
     }
 
     @Inject(optional = true)
-    public void setThreshold(@Named(BenchmarkConfig.THRESHOLD) long threshold) {
-        this.threshold = threshold;
+    public void setJmx(@Named(BenchmarkConfig.JMX) boolean jmx) {
+        this.jmx = jmx;
     }
 
     @Inject(optional = true)
-    public void setThresholdUnit(@Named(BenchmarkConfig.THRESHOLD_UNIT) TimeUnit thresholdUnit) {
-        this.thresholdUnit = thresholdUnit;
+    public void setAdaptive(@Named(BenchmarkConfig.ADAPTIVE) boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    @Inject(optional = true)
+    public void setAdaptiveMultiplier(@Named(BenchmarkConfig.ADAPTIVE_MULTIPLIER) double adaptiveMultiplier) {
+        Preconditions.checkArgument(adaptiveMultiplier > 0.0, "Adaptive multiplier must be positive");
+        this.adaptiveMultiplier = adaptiveMultiplier;
+    }
+
+    @Inject(optional = true)
+    public void setAdaptiveWarmup(@Named(BenchmarkConfig.ADAPTIVE_WARMUP) long adaptiveWarmup) {
+        Preconditions.checkArgument(adaptiveWarmup > 0L, "Adaptive warmup must be positive");
+        this.adaptiveWarmup = adaptiveWarmup;
+    }
+
+    @Inject(optional = true)
+    public void setDriftFactor(@Named(BenchmarkConfig.DRIFT_FACTOR) double driftFactor) {
+        Preconditions.checkArgument(driftFactor > 1.0, "Drift factor must be greater than 1");
+        this.driftFactor = driftFactor;
     }
 
     @Override
     public void initialize() throws LifecycleException {
-        this.thresholdInMillis = thresholdUnit.toMillis(threshold);
+        if (measureResources) {
+            this.meter = new ResourceMeter(enableThreadMeasurement);
+        }
+        if (jmx) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                LOG.warn("Unable to register benchmark MBean", e);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (jmx) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                final ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                LOG.warn("Unable to unregister benchmark MBean", e);
+            }
+        }
     }
 
     @Override
     public Map<String, Object> filter(IpcCall call, IpcCommand command, IpcCallFilterChain chain)
         throws IpcCommandExecutionException {
 
-        if (active) {
-            final long start = System.currentTimeMillis();
-            final Map<String, Object> result = chain.filter(call, command);
-            final long time = System.currentTimeMillis() - start;
+        final BenchmarkSettings current = settings;
 
-            if (time > thresholdInMillis) {
-                service.log(command.getClass(), time, TimeUnit.MILLISECONDS, call, Collections.unmodifiableMap(result));
-            }
+        if (current.isActive()) {
+            final CommandStatistics commandStatistics = statistics.of(command.getClass());
+            commandStatistics.enter();
 
-            return result;
+            try {
+                return measure(call, command, chain, current, commandStatistics);
+            } finally {
+                commandStatistics.exit();
+            }
         } else {
             return chain.filter(call, command);
         }
     }
+
+    private Map<String, Object> measure(IpcCall call, IpcCommand command, IpcCallFilterChain chain,
+        BenchmarkSettings current, CommandStatistics commandStatistics) throws IpcCommandExecutionException {
+
+        final boolean sampled = sample(commandStatistics);
+
+        if (!sampled && !alwaysRecordSlow) {
+            return chain.filter(call, command);
+        }
+
+        final Span span = SpanStack.current().openRoot(commandStatistics.getType().getName());
+
+        try {
+            return time(call, command, chain, current, commandStatistics, sampled, span);
+        } finally {
+            span.close();
+        }
+    }
+
+    private Map<String, Object> time(IpcCall call, IpcCommand command, IpcCallFilterChain chain,
+        BenchmarkSettings current, CommandStatistics commandStatistics, boolean sampled, Span span)
+        throws IpcCommandExecutionException {
+
+        final long cpuBefore = meter == null ? ResourceUsage.UNKNOWN : meter.cpuTime();
+        final long allocatedBefore = meter == null ? ResourceUsage.UNKNOWN : meter.allocatedBytes();
+        final ExecutionTime executionTime = ExecutionTime.current();
+        executionTime.clear();
+
+        final long start = System.nanoTime();
+        final Map<String, Object> result = chain.filter(call, command);
+        final long nanos = System.nanoTime() - start;
+
+        final long executeNanos = executionTime.get();
+        final long cpu;
+        final long allocated;
+
+        if (meter == null) {
+            cpu = ResourceUsage.UNKNOWN;
+            allocated = ResourceUsage.UNKNOWN;
+        } else {
+            cpu = ResourceMeter.difference(cpuBefore, meter.cpuTime());
+            allocated = ResourceMeter.difference(allocatedBefore, meter.allocatedBytes());
+        }
+
+        if (sampled) {
+            commandStatistics.record(nanos, weight());
+            if (meter != null) {
+                commandStatistics.recordUsage(cpu, allocated);
+            }
+            if (executeNanos != ExecutionTime.UNKNOWN) {
+                commandStatistics.recordSplit(executeNanos, Math.max(0L, nanos - executeNanos));
+            }
+        }
+
+        final boolean declared = commandStatistics.getThresholdInNanos() != CommandStatistics.NO_THRESHOLD;
+        final long limit = declared ?
+            commandStatistics.getThresholdInNanos() : limitOf(commandStatistics, nanos, current);
+
+        if (nanos > limit) {
+            commandStatistics.recordSlow(nanos, call);
+            if (!sampled) {
+                commandStatistics.recordSlowUnsampled();
+            }
+            final ResourceUsage usage = meter == null ? ResourceUsage.UNAVAILABLE : new ResourceUsage(cpu, allocated);
+            final TimingTree timing = SpanStack.current().tree(span, start + nanos);
+            service.log(new BenchmarkRecord(commandStatistics.getType(), nanos, usage, timing,
+                call.getArguments(), result));
+        }
+
+        return result;
+    }
+
+    private boolean sample(CommandStatistics commandStatistics) {
+        switch (samplingMode) {
+            case ALL: {
+                return true;
+            }
+            case PROBABILISTIC: {
+                return XorShiftRandom.current().nextInt(sampleRate) == 0;
+            }
+            case RATE_LIMITED: {
+                return commandStatistics.tryAcquire(maxRecordsPerSecond);
+            }
+            default: {
+                throw new AssertionError(samplingMode);
+            }
+        }
+    }
+
+    private long limitOf(CommandStatistics commandStatistics, long nanos, BenchmarkSettings current) {
+        if (adaptive) {
+            commandStatistics.updateBaseline(nanos, adaptiveWarmup, driftFactor);
+            final long learned = commandStatistics.getBaseline().limit(adaptiveMultiplier);
+            if (learned != CommandStatistics.NO_THRESHOLD) {
+                return learned;
+            }
+        }
+        return current.getThresholdInNanos();
+    }
+
+    private int weight() {
+        return samplingMode == SamplingMode.PROBABILISTIC ? sampleRate : 1;
+    }
+
+    @Override
+    public boolean isActive() {
+        return settings.isActive();
+    }
+
+    @Override
+    public long getThreshold() {
+        return settings.getThreshold();
+    }
+
+    @Override
+    public TimeUnit getThresholdUnit() {
+        return settings.getThresholdUnit();
+    }
+
+    @Override
+    public synchronized void changeThreshold(long threshold, TimeUnit unit) {
+        this.settings = settings.withThreshold(threshold, unit);
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        final ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (CommandStatistics commandStatistics : statistics.getCommands().values()) {
+            builder.put(commandStatistics.getType().getName(), commandStatistics.getEstimatedCount());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencies() {
+        final ImmutableMap.Builder<String, Double> builder = ImmutableMap.builder();
+        for (CommandStatistics commandStatistics : statistics.getCommands().values()) {
+            final double mean = commandStatistics.snapshot().getMean() / NANOS_PER_MILLI;
+            builder.put(commandStatistics.getType().getName(), mean);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencies() {
+        final ImmutableMap.Builder<String, Double> builder = ImmutableMap.builder();
+        for (CommandStatistics commandStatistics : statistics.getCommands().values()) {
+            final double max = commandStatistics.snapshot().getMax() / NANOS_PER_MILLI;
+            builder.put(commandStatistics.getType().getName(), max);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String getAggregateStorage() {
+        return statistics.getStorage().name();
+    }
+
+    @Override
+    public long getAggregateFootprint() {
+        return statistics.getFootprint();
+    }
+
+    @Override
+    public void resetStatistics() {
+        statistics.reset();
+    }
+
 }
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Management interface of the benchmark filter. The filter registers itself
+ * on the platform MBean server under {@link #OBJECT_NAME} unless disabled using
+ * {@link BenchmarkConfig#JMX}. Latencies are reported in milliseconds.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public interface BenchmarkFilterMXBean {
+
+    String OBJECT_NAME = "de.cosmocode.palava.util:type=BenchmarkFilter";
+
+    /**
+     * Returns whether benchmarking is active.
+     *
+     * @return true if active, false otherwise
+     */
+    boolean isActive();
+
+    /**
+     * Enables or disables benchmarking.
+     *
+     * @param active the new active flag
+     */
+    void setActive(boolean active);
+
+    /**
+     * Returns the global slow-call threshold.
+     *
+     * @return the threshold in {@link #getThresholdUnit()}
+     */
+    long getThreshold();
+
+    /**
+     * Returns the unit of the global slow-call threshold.
+     *
+     * @return the threshold unit
+     */
+    TimeUnit getThresholdUnit();
+
+    /**
+     * Changes threshold and unit at once.
+     *
+     * @param threshold the new threshold
+     * @param unit the unit of the new threshold
+     * @throws IllegalArgumentException if threshold is negative
+     * @throws NullPointerException if unit is null
+     */
+    void changeThreshold(long threshold, TimeUnit unit);
+
+    /**
+     * Returns the estimated number of calls per command class name.
+     *
+     * @return all measured commands and their call counts
+     */
+    Map<String, Long> getCallCounts();
+
+    /**
+     * Returns the mean latency of sampled calls per command class name.
+     *
+     * @return all measured commands and their mean latency in milliseconds
+     */
+    Map<String, Double> getMeanLatencies();
+
+    /**
+     * Returns the maximum latency of sampled calls per command class name.
+     *
+     * @return all measured commands and their maximum latency in milliseconds
+     */
+    Map<String, Double> getMaxLatencies();
+
+    /**
+     * Returns where histograms and windows are stored.
+     *
+     * @return the name of the {@link AggregateStorage} in use
+     */
+    String getAggregateStorage();
+
+    /**
+     * Returns the memory occupied by histograms, windows and split times of all commands.
+     *
+     * @return the aggregate footprint in bytes
+     */
+    long getAggregateFootprint();
+
+    /**
+     * Resets the statistics of all commands, including call counts.
+     * Learned adaptive baselines are kept.
+     */
+    void resetStatistics();
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * A single slow call as passed to {@link BenchmarkService#log(BenchmarkRecord)}.
+ *
+ * <p>
+ *   The arguments and the result are unmodifiable views of the live call by default,
+ *   which are only valid while {@link BenchmarkService#log(BenchmarkRecord)} runs.
+ *   Services which keep records beyond that have to {@link #detach()} them first.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class BenchmarkRecord {
+
+    private final Class<? extends IpcCommand> command;
+
+    private final long nanos;
+
+    private final ResourceUsage usage;
+
+    private final TimingTree timing;
+
+    private final Map<String, Object> arguments;
+
+    private final Map<String, Object> result;
+
+    private final boolean detached;
+
+    BenchmarkRecord(Class<? extends IpcCommand> command, long nanos, ResourceUsage usage,
+        TimingTree timing, Map<String, Object> arguments, Map<String, Object> result) {
+        this(command, nanos, usage, timing, arguments, result, false);
+    }
+
+    private BenchmarkRecord(Class<? extends IpcCommand> command, long nanos, ResourceUsage usage,
+        TimingTree timing, Map<String, Object> arguments, Map<String, Object> result, boolean detached) {
+        this.command = command;
+        this.nanos = nanos;
+        this.usage = usage;
+        this.timing = timing;
+        this.arguments = Collections.unmodifiableMap(arguments);
+        this.result = Collections.unmodifiableMap(result);
+        this.detached = detached;
+    }
+
+    /**
+     * Creates a copy of this record which doesn't refer to the live call anymore. Argument
+     * and result values are not copied, only the maps holding them.
+     *
+     * @return a detached record, this record if it has been detached already
+     */
+    public BenchmarkRecord detach() {
+        if (detached) {
+            return this;
+        } else {
+            return new BenchmarkRecord(command, nanos, usage, timing,
+                Maps.newHashMap(arguments), Maps.newHashMap(result), true);
+        }
+    }
+
+    /**
+     * Returns the command being called.
+     *
+     * @return the command class
+     */
+    public Class<? extends IpcCommand> getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns the time spent executing, as measured.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Returns the cpu time and allocation of the call.
+     *
+     * @return the resource usage, {@link ResourceUsage#UNAVAILABLE} if not measured
+     */
+    public ResourceUsage getUsage() {
+        return usage;
+    }
+
+    /**
+     * Returns the spans opened during the call.
+     *
+     * @return the timing tree, {@link TimingTree#UNAVAILABLE} if not traced
+     */
+    public TimingTree getTiming() {
+        return timing;
+    }
+
+    /**
+     * Returns the arguments of the call.
+     *
+     * @return an unmodifiable map of the arguments
+     */
+    public Map<String, Object> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Returns the result of the call.
+     *
+     * @return an unmodifiable map of the result
+     */
+    public Map<String, Object> getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BenchmarkRecord{command=%s, nanos=%d}", command.getName(), nanos);
+    }
+
+}
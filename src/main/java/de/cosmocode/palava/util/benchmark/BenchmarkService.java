@@ -16,29 +16,24 @@
 
 package de.cosmocode.palava.util.benchmark;
 
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import de.cosmocode.palava.ipc.IpcCall;
-import de.cosmocode.palava.ipc.IpcCommand;
-
 /**
  * A service which logs command execution time.
  *
+ * <p>
+ *   Everything known about a call is passed as a single {@link BenchmarkRecord},
+ *   so new measurements can be added to the record without breaking implementations.
+ * </p>
+ *
  * @author Willi Schoenborn
  */
 public interface BenchmarkService {
 
     /**
-     * Logs the given results.
+     * Logs the given record.
      * 
-     * @param command the command being called
-     * @param time the time spent executing
-     * @param timeUnit the unit of time
-     * @param call the incoming call
-     * @param result the unmodifiable result
+     * @param record the measured call, which has to be {@link BenchmarkRecord#detach() detached}
+     *        if it is kept beyond this method
      */
-    void log(Class<? extends IpcCommand> command, long time, TimeUnit timeUnit, 
-        IpcCall call, Map<String, Object> result);
+    void log(BenchmarkRecord record);
     
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable snapshot of the runtime-tunable settings of the {@link BenchmarkFilter}.
+ * The filter publishes a new instance on every change, so the per-call path
+ * only needs a single volatile read to see a consistent set of values.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class BenchmarkSettings {
+
+    static final BenchmarkSettings DEFAULT = new BenchmarkSettings(true, 100L, TimeUnit.MILLISECONDS);
+
+    private final boolean active;
+
+    private final long threshold;
+
+    private final TimeUnit thresholdUnit;
+
+    private final long thresholdInNanos;
+
+    private BenchmarkSettings(boolean active, long threshold, TimeUnit thresholdUnit) {
+        Preconditions.checkArgument(threshold >= 0L, "Threshold must not be negative");
+        this.active = active;
+        this.threshold = threshold;
+        this.thresholdUnit = Preconditions.checkNotNull(thresholdUnit, "ThresholdUnit");
+        this.thresholdInNanos = thresholdUnit.toNanos(threshold);
+    }
+
+    /**
+     * Creates a copy of this settings with the given active flag.
+     *
+     * @param newActive the new active flag
+     * @return new settings
+     */
+    BenchmarkSettings withActive(boolean newActive) {
+        return new BenchmarkSettings(newActive, threshold, thresholdUnit);
+    }
+
+    /**
+     * Creates a copy of this settings with the given threshold.
+     *
+     * @param newThreshold the new threshold
+     * @param newUnit the unit of the new threshold
+     * @return new settings
+     * @throws IllegalArgumentException if newThreshold is negative
+     * @throws NullPointerException if newUnit is null
+     */
+    BenchmarkSettings withThreshold(long newThreshold, TimeUnit newUnit) {
+        return new BenchmarkSettings(active, newThreshold, newUnit);
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    long getThreshold() {
+        return threshold;
+    }
+
+    TimeUnit getThresholdUnit() {
+        return thresholdUnit;
+    }
+
+    long getThresholdInNanos() {
+        return thresholdInNanos;
+    }
+
+}
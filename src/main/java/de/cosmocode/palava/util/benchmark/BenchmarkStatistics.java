@@ -0,0 +1,408 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.commons.reflect.Reflection;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Holds the {@link CommandStatistics} of all commands measured by the {@link BenchmarkFilter}.
+ * Inject this class to take snapshots of the current per-command latency distribution.
+ *
+ * <p>
+ *   If {@link BenchmarkConfig#STATE_FILE} is configured, the cumulative statistics
+ *   of all commands are written to that file on shutdown and merged back in
+ *   on startup. The file starts with a magic number and a format version, files
+ *   of other versions are ignored. Commands which no longer exist are skipped.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+@Singleton
+public final class BenchmarkStatistics implements Initializable, Disposable {
+
+    static final int MAGIC = 0x50425354;
+
+    static final int VERSION = 1;
+
+    private static final Logger LOG = LoggerFactory.getLogger(BenchmarkStatistics.class);
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, CommandStatistics> commands = Maps.newConcurrentMap();
+
+    private int slowestCalls = 10;
+
+    private String[] heavyHitterArguments = {};
+
+    private int heavyHitters = 10;
+
+    private AggregateStore store = new HeapAggregateStore();
+
+    private File stateFile;
+
+    @Inject(optional = true)
+    void setSlowestCalls(@Named(BenchmarkConfig.SLOWEST_CALLS) int slowestCalls) {
+        Preconditions.checkArgument(slowestCalls >= 0, "Slowest calls must not be negative");
+        this.slowestCalls = slowestCalls;
+    }
+
+    @Inject(optional = true)
+    void setHeavyHitterArguments(@Named(BenchmarkConfig.HEAVY_HITTER_ARGUMENTS) String heavyHitterArguments) {
+        Preconditions.checkNotNull(heavyHitterArguments, "HeavyHitterArguments");
+        final List<String> arguments = Lists.newArrayList();
+        for (String argument : heavyHitterArguments.split(",")) {
+            if (argument.trim().length() > 0) {
+                arguments.add(argument.trim());
+            }
+        }
+        this.heavyHitterArguments = arguments.toArray(new String[arguments.size()]);
+    }
+
+    @Inject(optional = true)
+    void setHeavyHitters(@Named(BenchmarkConfig.HEAVY_HITTERS) int heavyHitters) {
+        Preconditions.checkArgument(heavyHitters >= 0, "Heavy hitters must not be negative");
+        this.heavyHitters = heavyHitters;
+    }
+
+    @Inject(optional = true)
+    void setAggregateStorage(@Named(BenchmarkConfig.AGGREGATE_STORAGE) AggregateStorage storage) {
+        Preconditions.checkNotNull(storage, "Storage");
+        Preconditions.checkState(commands.isEmpty(), "Storage can't be changed after commands have been measured");
+        switch (storage) {
+            case HEAP: {
+                this.store = new HeapAggregateStore();
+                break;
+            }
+            case OFF_HEAP: {
+                this.store = OffHeapAggregateStore.create();
+                break;
+            }
+            default: {
+                throw new AssertionError(storage);
+            }
+        }
+    }
+
+    @Inject(optional = true)
+    void setStateFile(@Named(BenchmarkConfig.STATE_FILE) File stateFile) {
+        this.stateFile = Preconditions.checkNotNull(stateFile, "StateFile");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        if (stateFile == null || !stateFile.exists()) {
+            return;
+        }
+
+        try {
+            restore(stateFile);
+        } catch (IOException e) {
+            LOG.warn("Unable to restore benchmark statistics from " + stateFile, e);
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (stateFile == null) {
+            return;
+        }
+
+        try {
+            persist(stateFile);
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+    }
+
+    /**
+     * Writes the cumulative statistics of all commands to the given file. The data is
+     * written to a temporary file first, which then replaces the given file.
+     *
+     * @param file the target file
+     * @throws IOException if writing failed
+     */
+    void persist(File file) throws IOException {
+        final File temporary = new File(file.getPath() + ".tmp");
+        final List<CommandStatistics> all = Lists.newArrayList(commands.values());
+        final DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(temporary)));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(System.currentTimeMillis());
+            output.writeInt(all.size());
+
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            for (CommandStatistics statistics : all) {
+                buffer.reset();
+                statistics.writeTo(new DataOutputStream(buffer));
+                output.writeUTF(statistics.getType().getName());
+                // length prefixed, so commands which no longer exist can be skipped
+                output.writeInt(buffer.size());
+                buffer.writeTo(output);
+            }
+        } finally {
+            output.close();
+        }
+
+        // renaming replaces the target atomically on posix systems, others need to delete it first
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            throw new IOException(String.format("Unable to rename %s to %s", temporary, file));
+        }
+
+        LOG.info("Persisted benchmark statistics of {} commands to {}", all.size(), file);
+    }
+
+    /**
+     * Reads the statistics written by {@link #persist(File)} and adds them to the current ones.
+     *
+     * @param file the source file
+     * @throws IOException if reading failed or the file is corrupt
+     */
+    void restore(File file) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            if (input.readInt() != MAGIC) {
+                LOG.warn("{} contains no benchmark statistics, ignoring it", file);
+                return;
+            }
+
+            final int version = input.readInt();
+            if (version != VERSION) {
+                LOG.warn("{} has unsupported version {}, ignoring it", file, version);
+                return;
+            }
+
+            // written at
+            input.readLong();
+
+            final int size = input.readInt();
+            int restored = 0;
+
+            for (int i = 0; i < size; i++) {
+                final String name = input.readUTF();
+                final byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                final Class<? extends IpcCommand> type = commandOf(name);
+
+                if (type == null) {
+                    LOG.debug("Skipping statistics of unknown command {}", name);
+                } else {
+                    of(type).mergeFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+                    restored++;
+                }
+            }
+
+            LOG.info("Restored benchmark statistics of {} commands from {}", restored, file);
+        } finally {
+            input.close();
+        }
+    }
+
+    private Class<? extends IpcCommand> commandOf(String name) {
+        final Class<?> type;
+
+        try {
+            type = Reflection.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        if (IpcCommand.class.isAssignableFrom(type)) {
+            return type.asSubclass(IpcCommand.class);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the statistics of the specified command, creating them if necessary.
+     *
+     * @param command the command type
+     * @return the statistics of the given command
+     */
+    CommandStatistics of(Class<? extends IpcCommand> command) {
+        final CommandStatistics statistics = commands.get(command);
+        return statistics == null ? create(command) : statistics;
+    }
+
+    // store cells are never released, so statistics must not be created speculatively
+    private synchronized CommandStatistics create(Class<? extends IpcCommand> command) {
+        final CommandStatistics existing = commands.get(command);
+        if (existing == null) {
+            final CommandStatistics created = new CommandStatistics(command, slowestCalls,
+                heavyHitterArguments, heavyHitters, store);
+            commands.put(command, created);
+            return created;
+        } else {
+            return existing;
+        }
+    }
+
+    /**
+     * Returns the statistics of all measured commands.
+     *
+     * @return an unmodifiable live view of all measured commands and their statistics
+     */
+    public Map<Class<? extends IpcCommand>, CommandStatistics> getCommands() {
+        return Collections.unmodifiableMap(commands);
+    }
+
+    /**
+     * Creates a snapshot of the histogram of the specified command.
+     *
+     * @param command the command type
+     * @return a snapshot of the command's histogram, which is empty if the command has not been measured yet
+     * @throws NullPointerException if command is null
+     */
+    public HistogramSnapshot snapshot(Class<? extends IpcCommand> command) {
+        Preconditions.checkNotNull(command, "Command");
+        final CommandStatistics statistics = commands.get(command);
+        return statistics == null ? new LatencyHistogram().snapshot() : statistics.snapshot();
+    }
+
+    /**
+     * Creates snapshots of all histograms.
+     *
+     * @return an immutable map of all measured commands and their histogram snapshots
+     */
+    public Map<Class<? extends IpcCommand>, HistogramSnapshot> snapshot() {
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, HistogramSnapshot> builder = ImmutableMap.builder();
+        for (Map.Entry<Class<? extends IpcCommand>, CommandStatistics> entry : commands.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates snapshots of all histograms and resets them afterwards. This allows
+     * reporting latencies per interval.
+     *
+     * @return an immutable map of all measured commands and their histogram snapshots
+     */
+    public Map<Class<? extends IpcCommand>, HistogramSnapshot> snapshotAndReset() {
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, HistogramSnapshot> builder = ImmutableMap.builder();
+        for (Map.Entry<Class<? extends IpcCommand>, CommandStatistics> entry : commands.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().getHistogram().snapshotAndReset());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates snapshots of the sliding windows of all commands.
+     *
+     * @param minutes the window length, between 1 and {@value SlidingWindows#MAX_MINUTES}
+     * @return an immutable map of all measured commands and their window snapshots
+     * @throws IllegalArgumentException if minutes is out of range
+     */
+    public Map<Class<? extends IpcCommand>, WindowSnapshot> window(int minutes) {
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, WindowSnapshot> builder = ImmutableMap.builder();
+        for (Map.Entry<Class<? extends IpcCommand>, CommandStatistics> entry : commands.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().getWindows().snapshot(minutes));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a copy of the slowest calls of all commands.
+     *
+     * @return an immutable map of all measured commands and their slowest calls, slowest first
+     */
+    public Map<Class<? extends IpcCommand>, List<SlowCall>> slowestCalls() {
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, List<SlowCall>> builder = ImmutableMap.builder();
+        for (Map.Entry<Class<? extends IpcCommand>, CommandStatistics> entry : commands.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().getSlowestCalls().getCalls());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the storage actually used for histograms and windows, which may
+     * differ from the configured one if off-heap storage is not supported.
+     *
+     * @return the aggregate storage
+     */
+    public AggregateStorage getStorage() {
+        return store.getStorage();
+    }
+
+    /**
+     * Returns the number of bytes allocated from the aggregate store, i.e. the
+     * histograms, window slots and split times of all commands. Scalar counters,
+     * slowest calls, heavy hitters and other per-command objects are not included.
+     *
+     * @return the aggregate footprint in bytes
+     */
+    public long getFootprint() {
+        return store.getFootprint();
+    }
+
+    /**
+     * Creates a copy of the heavy hitters of all commands.
+     *
+     * @return an immutable map of all measured commands and their heavy hitters, highest count first
+     */
+    public Map<Class<? extends IpcCommand>, List<HeavyHitter>> heavyHitters() {
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, List<HeavyHitter>> builder = ImmutableMap.builder();
+        for (Map.Entry<Class<? extends IpcCommand>, CommandStatistics> entry : commands.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().getHeavyHitters().getHitters());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Resets the statistics of all commands, i.e. counters, histograms, sliding windows,
+     * slowest calls, heavy hitters and in-flight peaks. Adaptive baselines are kept.
+     */
+    public void reset() {
+        for (CommandStatistics statistics : commands.values()) {
+            statistics.reset();
+        }
+    }
+
+}
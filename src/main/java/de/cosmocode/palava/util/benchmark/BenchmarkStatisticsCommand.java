@@ -0,0 +1,214 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Returns;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommand.Throws;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.util.qa.UnusedCommands;
+
+/**
+ * See below.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+@Description("Returns a snapshot of the benchmark statistics of all measured commands, ordered by name. " +
+    "Histograms are only computed for the requested page, durations are in nanoseconds.")
+@Params({
+    @Param(name = BenchmarkStatisticsCommand.PREFIX, description = "The command class name prefix to filter by",
+        optional = true),
+    @Param(name = BenchmarkStatisticsCommand.OFFSET, description = "The number of commands to skip", type = "int",
+        optional = true, defaultValue = "0"),
+    @Param(name = BenchmarkStatisticsCommand.LIMIT, description = "The maximum number of commands to return",
+        type = "int", optional = true, defaultValue = "" + BenchmarkStatisticsCommand.DEFAULT_LIMIT)
+})
+@Returns({
+    @Return(name = BenchmarkStatisticsCommand.TOTAL, description = "The number of commands matching the prefix"),
+    @Return(name = BenchmarkStatisticsCommand.COMMANDS, description = "A list of per-command statistics, containing " +
+        "name, count, sampled, inFlight, peakInFlight, mean, p50, p90, p99, p999, max, rate1m, p99_1m, " +
+        "rate5m, p99_5m, rate15m, p99_15m, the list of slowest calls and the heavy hitters of slow calls"),
+    @Return(name = BenchmarkStatisticsCommand.UNUSED, description = "The names of all unused commands matching " +
+        "the prefix, empty if the unused filter is not installed")
+})
+@Throws({
+    @Throw(name = IllegalArgumentException.class,
+        description = "If offset or limit are malformed or out of range")
+})
+@Singleton
+public final class BenchmarkStatisticsCommand implements IpcCommand {
+
+    public static final String PREFIX = "prefix";
+    public static final String OFFSET = "offset";
+    public static final String LIMIT = "limit";
+
+    public static final String TOTAL = "total";
+    public static final String COMMANDS = "commands";
+    public static final String UNUSED = "unused";
+
+    static final int DEFAULT_LIMIT = 20;
+
+    // every rendered command computes four histogram snapshots
+    static final int MAX_LIMIT = 100;
+
+    private final BenchmarkStatistics statistics;
+
+    private UnusedCommands unusedCommands;
+
+    @Inject
+    public BenchmarkStatisticsCommand(BenchmarkStatistics statistics) {
+        this.statistics = Preconditions.checkNotNull(statistics, "Statistics");
+    }
+
+    @Inject(optional = true)
+    void setUnusedCommands(UnusedCommands unusedCommands) {
+        this.unusedCommands = unusedCommands;
+    }
+
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        final String prefix = arguments.containsKey(PREFIX) ? arguments.getString(PREFIX) : "";
+        final int offset = intOf(arguments, OFFSET, 0);
+        final int limit = intOf(arguments, LIMIT, DEFAULT_LIMIT);
+
+        Preconditions.checkArgument(offset >= 0, "Offset must not be negative");
+        Preconditions.checkArgument(limit > 0 && limit <= MAX_LIMIT, "Limit must be between 1 and %s", MAX_LIMIT);
+
+        final Map<String, CommandStatistics> matching = Maps.newTreeMap();
+        for (CommandStatistics commandStatistics : statistics.getCommands().values()) {
+            final String name = commandStatistics.getType().getName();
+            if (name.startsWith(prefix)) {
+                matching.put(name, commandStatistics);
+            }
+        }
+
+        final List<Map<String, Object>> commands = Lists.newArrayList();
+        int index = 0;
+
+        for (CommandStatistics commandStatistics : matching.values()) {
+            if (index++ < offset) {
+                continue;
+            } else if (commands.size() == limit) {
+                break;
+            }
+            commands.add(render(commandStatistics));
+        }
+
+        result.put(TOTAL, matching.size());
+        result.put(COMMANDS, commands);
+        result.put(UNUSED, unused(prefix));
+    }
+
+    private int intOf(IpcArguments arguments, String key, int defaultValue) {
+        final Object value = arguments.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        // numbers and strings alike, rejects fractions and values exceeding int instead of narrowing them
+        try {
+            return new BigDecimal(value.toString()).intValueExact();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s must be an integer but was '%s'", key, value), e);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("%s must be an integer but was '%s'", key, value), e);
+        }
+    }
+
+    private Map<String, Object> render(CommandStatistics commandStatistics) {
+        final HistogramSnapshot snapshot = commandStatistics.snapshot();
+        final Map<String, Object> map = Maps.newLinkedHashMap();
+
+        map.put("name", commandStatistics.getType().getName());
+        map.put("count", commandStatistics.getEstimatedCount());
+        map.put("sampled", commandStatistics.getSampledCount());
+        map.put("inFlight", commandStatistics.getInFlight());
+        map.put("peakInFlight", commandStatistics.getPeakInFlight());
+        map.put("mean", (long) snapshot.getMean());
+        map.put("p50", snapshot.getPercentile(50.0));
+        map.put("p90", snapshot.getPercentile(90.0));
+        map.put("p99", snapshot.getPercentile(99.0));
+        map.put("p999", snapshot.getPercentile(99.9));
+        map.put("max", snapshot.getMax());
+
+        final SlidingWindows windows = commandStatistics.getWindows();
+        for (WindowSnapshot window : new WindowSnapshot[] {
+            windows.oneMinute(), windows.fiveMinutes(), windows.fifteenMinutes()
+        }) {
+            map.put("rate" + window.getMinutes() + "m", window.getRate());
+            map.put("p99_" + window.getMinutes() + "m", window.getHistogram().getPercentile(99.0));
+        }
+
+        final List<Map<String, Object>> slowest = Lists.newArrayList();
+        for (SlowCall slowCall : commandStatistics.getSlowestCalls().getCalls()) {
+            final Map<String, Object> rendered = Maps.newLinkedHashMap();
+            rendered.put("duration", slowCall.getDuration());
+            rendered.put("timestamp", slowCall.getTimestamp());
+            rendered.put("arguments", slowCall.getArguments());
+            slowest.add(rendered);
+        }
+        map.put("slowest", slowest);
+
+        final List<Map<String, Object>> hitters = Lists.newArrayList();
+        for (HeavyHitter heavyHitter : commandStatistics.getHeavyHitters().getHitters()) {
+            final Map<String, Object> rendered = Maps.newLinkedHashMap();
+            rendered.put("argument", heavyHitter.getArgument());
+            rendered.put("value", heavyHitter.getValue());
+            rendered.put("count", heavyHitter.getCount());
+            hitters.add(rendered);
+        }
+        map.put("heavyHitters", hitters);
+
+        return map;
+    }
+
+    private List<String> unused(String prefix) {
+        if (unusedCommands == null) {
+            return Collections.emptyList();
+        }
+
+        final List<String> names = Lists.newArrayList();
+        for (Class<? extends IpcCommand> type : unusedCommands.getUnusedCommands()) {
+            if (type.getName().startsWith(prefix)) {
+                names.add(type.getName());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+}
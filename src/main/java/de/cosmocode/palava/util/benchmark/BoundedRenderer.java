@@ -0,0 +1,158 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Map;
+
+/**
+ * Renders arbitrary argument values into a {@link StringBuilder}, bounded by
+ * length and nesting depth. Maps, iterables and arrays are traversed
+ * directly, so large structures are never converted to strings as a whole.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class BoundedRenderer {
+
+    static final String TRUNCATED = "...(truncated)";
+
+    static final String MAP_TOO_DEEP = "{...}";
+
+    static final String LIST_TOO_DEEP = "[...]";
+
+    private BoundedRenderer() {
+
+    }
+
+    /**
+     * Appends the given value to the given builder.
+     *
+     * @param builder the target builder
+     * @param value the value to render, may be null
+     * @param maxLength the maximum number of characters to append, excluding the truncation marker
+     * @param maxDepth the maximum nesting depth of maps, iterables and arrays
+     */
+    static void render(StringBuilder builder, Object value, int maxLength, int maxDepth) {
+        final int limit = builder.length() + maxLength;
+        if (!append(builder, value, limit, maxDepth)) {
+            builder.setLength(Math.min(builder.length(), limit));
+            builder.append(TRUNCATED);
+        }
+    }
+
+    private static boolean append(StringBuilder builder, Object value, int limit, int depth) {
+        if (value instanceof Map<?, ?>) {
+            return appendMap(builder, Map.class.cast(value), limit, depth);
+        } else if (value instanceof Iterable<?>) {
+            return appendIterable(builder, Iterable.class.cast(value), limit, depth);
+        } else if (value instanceof Object[]) {
+            return appendArray(builder, Object[].class.cast(value), limit, depth);
+        } else if (value instanceof CharSequence) {
+            return appendBounded(builder, CharSequence.class.cast(value), limit);
+        } else if (value instanceof Long || value instanceof Integer) {
+            // appending primitives doesn't create a temporary string
+            builder.append(Number.class.cast(value).longValue());
+            return builder.length() <= limit;
+        } else {
+            return appendBounded(builder, String.valueOf(value), limit);
+        }
+    }
+
+    private static boolean appendMap(StringBuilder builder, Map<?, ?> map, int limit, int depth) {
+        if (depth == 0) {
+            return appendBounded(builder, MAP_TOO_DEEP, limit);
+        }
+
+        builder.append('{');
+        boolean first = true;
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                builder.append(", ");
+            }
+            first = false;
+
+            if (!append(builder, entry.getKey(), limit, depth - 1)) {
+                return false;
+            }
+            builder.append('=');
+            if (!append(builder, entry.getValue(), limit, depth - 1)) {
+                return false;
+            }
+        }
+
+        builder.append('}');
+        return builder.length() <= limit;
+    }
+
+    private static boolean appendIterable(StringBuilder builder, Iterable<?> iterable, int limit, int depth) {
+        if (depth == 0) {
+            return appendBounded(builder, LIST_TOO_DEEP, limit);
+        }
+
+        builder.append('[');
+        boolean first = true;
+
+        for (Object element : iterable) {
+            if (!first) {
+                builder.append(", ");
+            }
+            first = false;
+
+            if (!append(builder, element, limit, depth - 1)) {
+                return false;
+            }
+        }
+
+        builder.append(']');
+        return builder.length() <= limit;
+    }
+
+    private static boolean appendArray(StringBuilder builder, Object[] array, int limit, int depth) {
+        if (depth == 0) {
+            return appendBounded(builder, LIST_TOO_DEEP, limit);
+        }
+
+        builder.append('[');
+
+        for (int i = 0; i < array.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            if (!append(builder, array[i], limit, depth - 1)) {
+                return false;
+            }
+        }
+
+        builder.append(']');
+        return builder.length() <= limit;
+    }
+
+    private static boolean appendBounded(StringBuilder builder, CharSequence sequence, int limit) {
+        final int remaining = limit - builder.length();
+        if (sequence.length() <= remaining) {
+            builder.append(sequence);
+            return true;
+        } else {
+            if (remaining > 0) {
+                builder.append(sequence, 0, remaining);
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Looks up command instances for replayed calls. Commands are created
+ * using an {@link Injector} once per type and reused afterwards, so
+ * creating commands doesn't distort the measured latencies.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CommandRegistry {
+
+    private final Injector injector;
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, IpcCommand> commands = Maps.newConcurrentMap();
+
+    @Inject
+    public CommandRegistry(Injector injector) {
+        this.injector = Preconditions.checkNotNull(injector, "Injector");
+    }
+
+    /**
+     * Returns the command of the given type, creating it if necessary.
+     *
+     * @param type the command type
+     * @return the command
+     * @throws NullPointerException if type is null
+     */
+    public IpcCommand get(Class<? extends IpcCommand> type) {
+        Preconditions.checkNotNull(type, "Type");
+        final IpcCommand command = commands.get(type);
+        if (command == null) {
+            final IpcCommand created = injector.getInstance(type);
+            final IpcCommand existing = commands.putIfAbsent(type, created);
+            return existing == null ? created : existing;
+        } else {
+            return command;
+        }
+    }
+
+}
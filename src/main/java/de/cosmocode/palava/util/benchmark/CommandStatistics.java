@@ -0,0 +1,458 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Aggregated benchmark data of a single {@link IpcCommand} class. Instances
+ * resolve the command's {@link Threshold} once, so the per-call path
+ * never has to use reflection.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CommandStatistics {
+
+    static final long NO_THRESHOLD = -1L;
+
+    // split count, execution and downstream time, allocated from the aggregate store
+    private static final int SPLIT_CELLS = 3;
+
+    private static final int SPLIT_COUNT = 0;
+
+    private static final int EXECUTE_TIME = 1;
+
+    private static final int DOWNSTREAM_TIME = 2;
+
+    private final Class<? extends IpcCommand> type;
+
+    private final long thresholdInNanos;
+
+    private final LatencyHistogram histogram;
+
+    private final SlowestCalls slowestCalls;
+
+    private final HeavyHitters heavyHitters;
+
+    private final SlidingWindows windows;
+
+    private final AdaptiveBaseline baseline;
+
+    private final AtomicLong sampled = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong estimated = new AtomicLong();
+
+    private final AtomicLong slowUnsampled = new AtomicLong();
+
+    private final AtomicLong measured = new AtomicLong();
+
+    private final AtomicLong cpuTime = new AtomicLong();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    // a single counter, because every call needs its current value to track the peak
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private final AtomicLong peakInFlight = new AtomicLong();
+
+    private final AtomicLongCells split;
+
+    private final AtomicLong window = new AtomicLong();
+
+    private final AtomicInteger permits = new AtomicInteger();
+
+    CommandStatistics(Class<? extends IpcCommand> type, int slowestCallsCapacity,
+        String[] heavyHitterArguments, int heavyHittersCapacity, AggregateStore store) {
+        this.type = type;
+        this.histogram = new LatencyHistogram(store.allocate(LatencyHistogram.CELLS));
+        this.windows = new SlidingWindows(store);
+        this.split = store.allocate(SPLIT_CELLS);
+        this.slowestCalls = new SlowestCalls(slowestCallsCapacity);
+        this.heavyHitters = new HeavyHitters(heavyHitterArguments, heavyHittersCapacity);
+        this.baseline = new AdaptiveBaseline(type);
+
+        final Threshold threshold = type.getAnnotation(Threshold.class);
+
+        this.thresholdInNanos = threshold == null ? NO_THRESHOLD : threshold.unit().toNanos(threshold.value());
+    }
+
+    /**
+     * Marks the start of a call.
+     */
+    void enter() {
+        final long current = inFlight.incrementAndGet();
+        long peak = peakInFlight.get();
+        // plain reads unless a new peak has been reached
+        while (current > peak && !peakInFlight.compareAndSet(peak, current)) {
+            peak = peakInFlight.get();
+        }
+    }
+
+    /**
+     * Marks the end of a call.
+     */
+    void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Records a sampled call.
+     *
+     * @param nanos the measured time in nanoseconds
+     * @param weight the number of calls this sample represents
+     */
+    void record(long nanos, int weight) {
+        histogram.record(nanos);
+        windows.record(nanos, weight);
+        sampled.incrementAndGet();
+        estimated.addAndGet(weight);
+    }
+
+    /**
+     * Records the resource usage of a sampled call.
+     *
+     * @param cpu the cpu time in nanoseconds or {@link ResourceUsage#UNKNOWN}
+     * @param allocated the allocated bytes or {@link ResourceUsage#UNKNOWN}
+     */
+    void recordUsage(long cpu, long allocated) {
+        measured.incrementAndGet();
+        if (cpu != ResourceUsage.UNKNOWN) {
+            cpuTime.addAndGet(cpu);
+        }
+        if (allocated != ResourceUsage.UNKNOWN) {
+            allocatedBytes.addAndGet(allocated);
+        }
+    }
+
+    /**
+     * Records how the time of a sampled call has been split.
+     *
+     * @param executeNanos the time spent executing the command in nanoseconds
+     * @param downstreamNanos the time spent in downstream filters in nanoseconds
+     */
+    void recordSplit(long executeNanos, long downstreamNanos) {
+        split.add(SPLIT_COUNT, 1L);
+        split.add(EXECUTE_TIME, executeNanos);
+        split.add(DOWNSTREAM_TIME, downstreamNanos);
+    }
+
+    /**
+     * Records a call which exceeded its threshold.
+     *
+     * @param nanos the measured time in nanoseconds
+     * @param call the call
+     */
+    void recordSlow(long nanos, IpcCall call) {
+        slowestCalls.offer(nanos, call);
+        heavyHitters.offer(call);
+    }
+
+    /**
+     * Updates the adaptive baseline using a measured call.
+     *
+     * @param nanos the measured time in nanoseconds
+     * @param warmup the number of sampled calls required before calibrating
+     * @param driftFactor the factor by which the baseline may grow before a drift is reported
+     */
+    void updateBaseline(long nanos, long warmup, double driftFactor) {
+        baseline.update(nanos, this, warmup, driftFactor);
+    }
+
+    /**
+     * Records a slow call which has not been sampled.
+     */
+    void recordSlowUnsampled() {
+        slowUnsampled.incrementAndGet();
+    }
+
+    /**
+     * Tries to acquire a record permit for the current second.
+     *
+     * @param maxPerSecond the maximum number of permits per second
+     * @return true if the call may be recorded, false otherwise
+     */
+    boolean tryAcquire(int maxPerSecond) {
+        final long second = System.currentTimeMillis() / 1000L;
+        final long current = window.get();
+
+        if (current != second && window.compareAndSet(current, second)) {
+            permits.set(0);
+        }
+
+        if (permits.incrementAndGet() <= maxPerSecond) {
+            return true;
+        } else {
+            skipped.incrementAndGet();
+            estimated.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the threshold declared using {@link Threshold}.
+     *
+     * @return the threshold in nanoseconds or {@link #NO_THRESHOLD} if not declared
+     */
+    long getThresholdInNanos() {
+        return thresholdInNanos;
+    }
+
+    /**
+     * Writes the cumulative statistics of this command, i.e. counters, latency
+     * histogram and adaptive baseline. Windows, slowest calls and gauges are
+     * only meaningful at runtime and therefore not written.
+     *
+     * @param output the output to write to
+     * @throws IOException if writing failed
+     */
+    void writeTo(DataOutput output) throws IOException {
+        output.writeLong(sampled.get());
+        output.writeLong(skipped.get());
+        output.writeLong(estimated.get());
+        output.writeLong(slowUnsampled.get());
+        output.writeLong(measured.get());
+        output.writeLong(cpuTime.get());
+        output.writeLong(allocatedBytes.get());
+        histogram.writeTo(output);
+        baseline.writeTo(output);
+    }
+
+    /**
+     * Reads statistics written by {@link #writeTo(DataOutput)} and adds them to this statistics.
+     *
+     * @param input the input to read from
+     * @throws IOException if reading failed or the data is corrupt
+     */
+    void mergeFrom(DataInput input) throws IOException {
+        sampled.addAndGet(input.readLong());
+        skipped.addAndGet(input.readLong());
+        estimated.addAndGet(input.readLong());
+        slowUnsampled.addAndGet(input.readLong());
+        measured.addAndGet(input.readLong());
+        cpuTime.addAndGet(input.readLong());
+        allocatedBytes.addAndGet(input.readLong());
+        histogram.mergeFrom(input);
+        baseline.mergeFrom(input);
+    }
+
+    /**
+     * Resets all counters, the latency histogram, the sliding windows, the slowest calls,
+     * the heavy hitters and the in-flight peak. The number of calls currently in flight
+     * and the adaptive baseline, which is a learned limit rather than a statistic, are kept.
+     */
+    void reset() {
+        sampled.set(0L);
+        skipped.set(0L);
+        estimated.set(0L);
+        slowUnsampled.set(0L);
+        measured.set(0L);
+        cpuTime.set(0L);
+        allocatedBytes.set(0L);
+        for (int i = 0; i < SPLIT_CELLS; i++) {
+            split.set(i, 0L);
+        }
+        peakInFlight.set(inFlight.get());
+        histogram.reset();
+        windows.reset();
+        slowestCalls.clear();
+        heavyHitters.clear();
+    }
+
+    LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Returns the command type.
+     *
+     * @return the command type
+     */
+    public Class<? extends IpcCommand> getType() {
+        return type;
+    }
+
+    /**
+     * Creates a snapshot of the latency histogram of sampled calls.
+     *
+     * @return a new snapshot
+     */
+    public HistogramSnapshot snapshot() {
+        return histogram.snapshot();
+    }
+
+    /**
+     * Returns the sliding windows of the last minutes.
+     *
+     * @return the sliding windows of this command
+     */
+    public SlidingWindows getWindows() {
+        return windows;
+    }
+
+    /**
+     * Returns the adaptive p99 baseline, which is only maintained if the
+     * {@link BenchmarkFilter} runs in adaptive mode.
+     *
+     * @return the adaptive baseline of this command
+     */
+    public AdaptiveBaseline getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * Returns the slowest calls which exceeded their threshold.
+     *
+     * @return the slowest calls of this command
+     */
+    public SlowestCalls getSlowestCalls() {
+        return slowestCalls;
+    }
+
+    /**
+     * Returns the argument values which dominate the slow calls, which are
+     * only tracked if heavy hitter arguments are configured.
+     *
+     * @return the heavy hitters of this command
+     */
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    /**
+     * Returns the number of calls which have been sampled.
+     *
+     * @return the number of sampled calls
+     */
+    public long getSampledCount() {
+        return sampled.get();
+    }
+
+    /**
+     * Returns the number of calls which have been skipped due to rate limiting.
+     *
+     * @return the number of skipped calls
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Returns the number of slow calls which have been reported although
+     * they were not sampled.
+     *
+     * @return the number of slow, unsampled calls
+     */
+    public long getSlowUnsampledCount() {
+        return slowUnsampled.get();
+    }
+
+    /**
+     * Returns the number of sampled calls whose resource usage has been measured.
+     *
+     * @return the number of measured calls
+     */
+    public long getMeasuredCount() {
+        return measured.get();
+    }
+
+    /**
+     * Returns the total cpu time of all measured calls.
+     *
+     * @return the cpu time in nanoseconds
+     */
+    public long getCpuTime() {
+        return cpuTime.get();
+    }
+
+    /**
+     * Returns the total number of bytes allocated by all measured calls.
+     *
+     * @return the allocated bytes
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * Returns the number of calls currently being processed.
+     *
+     * @return the number of in-flight calls
+     */
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the highest number of concurrently processed calls observed so far.
+     * The peak is checked on every call.
+     *
+     * @return the in-flight peak
+     */
+    public long getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * Returns the number of sampled calls whose time has been split into
+     * execution and downstream filter time.
+     *
+     * @return the number of split calls
+     */
+    public long getSplitCount() {
+        return split.get(SPLIT_COUNT);
+    }
+
+    /**
+     * Returns the total time split calls spent executing the command.
+     *
+     * @return the execution time in nanoseconds
+     */
+    public long getExecuteTime() {
+        return split.get(EXECUTE_TIME);
+    }
+
+    /**
+     * Returns the total time split calls spent in filters between the
+     * benchmark filter and the command.
+     *
+     * @return the downstream filter time in nanoseconds
+     */
+    public long getDownstreamTime() {
+        return split.get(DOWNSTREAM_TIME);
+    }
+
+    /**
+     * Returns the extrapolated total number of calls, which is exact unless
+     * {@link SamplingMode#PROBABILISTIC} sampling is used.
+     *
+     * @return the estimated number of calls
+     */
+    public long getEstimatedCount() {
+        return estimated.get();
+    }
+
+}
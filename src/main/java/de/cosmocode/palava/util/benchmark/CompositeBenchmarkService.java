@@ -0,0 +1,177 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * A {@link BenchmarkService} which dispatches every record to all {@link Sink}s.
+ * Each sink is decoupled by its own bounded {@link AsyncBenchmarkService}
+ * which drops records on overflow and is drained by a dedicated daemon thread
+ * owned by this service. A slow or failing sink therefore neither delays
+ * the IPC call nor the delivery to the other sinks.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CompositeBenchmarkService implements BenchmarkService, Initializable, Disposable {
+
+    private final Set<BenchmarkService> sinks;
+
+    private int capacity = 1024;
+
+    private int batchSize = 64;
+
+    private long period = 100L;
+
+    private TimeUnit periodUnit = TimeUnit.MILLISECONDS;
+
+    private List<AsyncBenchmarkService> queues = ImmutableList.of();
+
+    private List<ScheduledExecutorService> schedulers = ImmutableList.of();
+
+    @Inject
+    CompositeBenchmarkService(@Sink Set<BenchmarkService> sinks) {
+        this.sinks = Preconditions.checkNotNull(sinks, "Sinks");
+    }
+
+    @Inject(optional = true)
+    void setCapacity(@Named(CompositeBenchmarkServiceConfig.CAPACITY) int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    @Inject(optional = true)
+    void setBatchSize(@Named(CompositeBenchmarkServiceConfig.BATCH_SIZE) int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    @Inject(optional = true)
+    void setPeriod(@Named(CompositeBenchmarkServiceConfig.PERIOD) long period) {
+        Preconditions.checkArgument(period > 0, "Period must be positive");
+        this.period = period;
+    }
+
+    @Inject(optional = true)
+    void setPeriodUnit(@Named(CompositeBenchmarkServiceConfig.PERIOD_UNIT) TimeUnit periodUnit) {
+        this.periodUnit = Preconditions.checkNotNull(periodUnit, "PeriodUnit");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        final ImmutableList.Builder<AsyncBenchmarkService> builder = ImmutableList.builder();
+        final ImmutableList.Builder<ScheduledExecutorService> executors = ImmutableList.builder();
+
+        for (BenchmarkService sink : sinks) {
+            final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new SinkThreadFactory(sink));
+            executors.add(scheduler);
+            final AsyncBenchmarkService queue = new AsyncBenchmarkService(sink, scheduler);
+            queue.setCapacity(capacity);
+            queue.setBatchSize(batchSize);
+            queue.setOverflowPolicy(OverflowPolicy.DROP);
+            queue.setPeriod(period);
+            queue.setPeriodUnit(periodUnit);
+            queue.initialize();
+            builder.add(queue);
+        }
+
+        this.queues = builder.build();
+        this.schedulers = executors.build();
+    }
+
+    @Override
+    public void log(BenchmarkRecord record) {
+        if (queues.isEmpty()) {
+            return;
+        }
+
+        // a single copy is shared by all sinks, and only made if one of them has room
+        BenchmarkRecord detached = null;
+
+        for (AsyncBenchmarkService queue : queues) {
+            if (queue.reject()) {
+                continue;
+            } else if (detached == null) {
+                detached = record.detach();
+            }
+            queue.offer(detached);
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        try {
+            for (AsyncBenchmarkService queue : queues) {
+                queue.dispose();
+            }
+        } finally {
+            for (ScheduledExecutorService scheduler : schedulers) {
+                scheduler.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns the buffers of all sinks, which can be used to monitor
+     * submitted, dropped and failed records per sink.
+     *
+     * @return an immutable list of the sink buffers
+     */
+    public List<AsyncBenchmarkService> getQueues() {
+        return queues;
+    }
+
+    /**
+     * Creates the daemon thread draining the buffer of a single sink.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class SinkThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        SinkThreadFactory(BenchmarkService sink) {
+            this.name = "benchmark-sink-" + sink.getClass().getSimpleName();
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
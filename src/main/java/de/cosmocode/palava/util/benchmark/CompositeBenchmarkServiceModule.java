@@ -0,0 +1,53 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.binder.LinkedBindingBuilder;
+import com.google.inject.multibindings.Multibinder;
+
+/**
+ * Binds {@link BenchmarkService} to {@link CompositeBenchmarkService}. Sinks are
+ * added using {@link LogBenchmarkServiceModule#asSink()},
+ * {@link JournalBenchmarkServiceModule#asSink()} or {@link #addSink(Binder)}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CompositeBenchmarkServiceModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        // allows an empty set of sinks
+        Multibinder.newSetBinder(binder, BenchmarkService.class, Sink.class);
+        binder.bind(CompositeBenchmarkService.class).in(Singleton.class);
+        binder.bind(BenchmarkService.class).to(CompositeBenchmarkService.class);
+    }
+
+    /**
+     * Adds a sink to the {@link CompositeBenchmarkService}.
+     *
+     * @param binder the current binder
+     * @return a binding builder for the new sink
+     */
+    public static LinkedBindingBuilder<BenchmarkService> addSink(Binder binder) {
+        return Multibinder.newSetBinder(binder, BenchmarkService.class, Sink.class).addBinding();
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * A per-thread slot which the {@link ExecutionTimeFilter} uses to pass the
+ * time spent executing a command to the enclosing {@link BenchmarkFilter}.
+ * Use {@link #current()} to get the slot of the current thread.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class ExecutionTime {
+
+    static final long UNKNOWN = -1L;
+
+    private static final ThreadLocal<ExecutionTime> CURRENT = new ThreadLocal<ExecutionTime>() {
+
+        @Override
+        protected ExecutionTime initialValue() {
+            return new ExecutionTime();
+        }
+
+    };
+
+    private long nanos = UNKNOWN;
+
+    /**
+     * Returns the slot of the current thread.
+     *
+     * @return the current thread's slot
+     */
+    static ExecutionTime current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Clears this slot.
+     */
+    void clear() {
+        nanos = UNKNOWN;
+    }
+
+    /**
+     * Sets the time of the most recently finished execution. Nested calls
+     * finish before their enclosing call, so the enclosing filter always
+     * sees its own execution time.
+     *
+     * @param executeNanos the execution time in nanoseconds
+     */
+    void set(long executeNanos) {
+        this.nanos = executeNanos;
+    }
+
+    /**
+     * Returns the time of the most recently finished execution.
+     *
+     * @return the execution time in nanoseconds or {@link #UNKNOWN}
+     */
+    long get() {
+        return nanos;
+    }
+
+}
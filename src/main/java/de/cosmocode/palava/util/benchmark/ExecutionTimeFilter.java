@@ -0,0 +1,54 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Map;
+
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilter;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * An {@link IpcCallFilter} which measures the time the remaining chain needs.
+ * Configured as last filter, this is the time spent in
+ * {@link IpcCommand#execute(IpcCall, Map)}, which the {@link BenchmarkFilter}
+ * uses to split its measurement.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+@Singleton
+final class ExecutionTimeFilter implements IpcCallFilter {
+
+    @Override
+    public Map<String, Object> filter(IpcCall call, IpcCommand command, IpcCallFilterChain chain)
+        throws IpcCommandExecutionException {
+
+        final long start = System.nanoTime();
+
+        try {
+            return chain.filter(call, command);
+        } finally {
+            ExecutionTime.current().set(System.nanoTime() - start);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import de.cosmocode.palava.ipc.Commands;
+import de.cosmocode.palava.ipc.FilterModule;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Configures the {@link ExecutionTimeFilter} to run around all {@link IpcCommand}s.
+ * This module has to be installed after all other filter modules, so the
+ * {@link BenchmarkFilter} can tell time spent in filters from time spent
+ * executing commands.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class ExecutionTimeFilterModule extends FilterModule {
+
+    @Override
+    protected void configure() {
+        filter(Commands.any()).through(ExecutionTimeFilter.class);
+    }
+
+}
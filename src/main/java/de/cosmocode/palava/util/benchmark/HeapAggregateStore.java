@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An {@link AggregateStore} which allocates {@link AtomicLongArray}s on the heap.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class HeapAggregateStore implements AggregateStore {
+
+    // array header, not counting the AtomicLongArray wrapper
+    private static final int HEADER = 16;
+
+    private final AtomicLong footprint = new AtomicLong();
+
+    @Override
+    public AtomicLongCells allocate(int length) {
+        footprint.addAndGet(HEADER + length * 8L);
+        return new HeapCells(length);
+    }
+
+    @Override
+    public long getFootprint() {
+        return footprint.get();
+    }
+
+    @Override
+    public AggregateStorage getStorage() {
+        return AggregateStorage.HEAP;
+    }
+
+    /**
+     * Cells backed by an {@link AtomicLongArray}.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    static final class HeapCells implements AtomicLongCells {
+
+        private final AtomicLongArray array;
+
+        HeapCells(int length) {
+            this.array = new AtomicLongArray(length);
+        }
+
+        @Override
+        public int length() {
+            return array.length();
+        }
+
+        @Override
+        public long get(int index) {
+            return array.get(index);
+        }
+
+        @Override
+        public void set(int index, long value) {
+            array.set(index, value);
+        }
+
+        @Override
+        public void add(int index, long delta) {
+            array.addAndGet(index, delta);
+        }
+
+        @Override
+        public long getAndSet(int index, long value) {
+            return array.getAndSet(index, value);
+        }
+
+        @Override
+        public boolean compareAndSet(int index, long expect, long update) {
+            return array.compareAndSet(index, expect, update);
+        }
+
+    }
+
+}
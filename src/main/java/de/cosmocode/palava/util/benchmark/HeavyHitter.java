@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * A single argument value reported by {@link HeavyHitters}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class HeavyHitter {
+
+    private final String argument;
+
+    private final String value;
+
+    private final long count;
+
+    HeavyHitter(String argument, String value, long count) {
+        this.argument = argument;
+        this.value = value;
+        this.count = count;
+    }
+
+    /**
+     * Returns the argument key.
+     *
+     * @return the argument key
+     */
+    public String getArgument() {
+        return argument;
+    }
+
+    /**
+     * Returns the argument value, rendered up to {@value SlowestCalls#MAX_VALUE_LENGTH}
+     * characters and a nesting depth of {@value SlowestCalls#MAX_DEPTH}.
+     *
+     * @return the argument value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the estimated number of slow calls with this argument value.
+     * The estimate never undercounts, but may overcount due to hash collisions.
+     *
+     * @return the estimated count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HeavyHitter{argument=%s, value=%s, count=%d}", argument, value, count);
+    }
+
+}
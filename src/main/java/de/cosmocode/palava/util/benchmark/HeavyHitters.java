@@ -0,0 +1,215 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import de.cosmocode.palava.ipc.IpcCall;
+
+/**
+ * Tracks which values of selected arguments dominate the slow calls of a single
+ * command, using fixed memory regardless of the number of distinct values.
+ *
+ * <p>
+ *   Every value is counted in a Count-Min sketch of {@value #DEPTH} rows with
+ *   {@value #WIDTH} counters each. The values with the highest estimates are kept
+ *   as candidates, replacing the candidate with the lowest estimate once full.
+ *   Estimates never undercount, so a value which dominates the slow calls is
+ *   guaranteed to be reported.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class HeavyHitters {
+
+    static final int DEPTH = 4;
+
+    static final int WIDTH = 512;
+
+    private static final Comparator<HeavyHitter> HIGHEST_FIRST = new Comparator<HeavyHitter>() {
+
+        @Override
+        public int compare(HeavyHitter left, HeavyHitter right) {
+            if (left.getCount() == right.getCount()) {
+                return 0;
+            } else {
+                return left.getCount() < right.getCount() ? 1 : -1;
+            }
+        }
+
+    };
+
+    private final String[] arguments;
+
+    private final long[] sketch;
+
+    private final String[] candidateArguments;
+
+    private final String[] candidateValues;
+
+    private final long[] candidateCounts;
+
+    private int size;
+
+    private long total;
+
+    HeavyHitters(String[] arguments, int capacity) {
+        Preconditions.checkNotNull(arguments, "Arguments");
+        Preconditions.checkArgument(capacity >= 0, "Capacity must not be negative");
+        this.arguments = arguments.clone();
+        this.sketch = arguments.length == 0 || capacity == 0 ? new long[0] : new long[DEPTH * WIDTH];
+        this.candidateArguments = new String[capacity];
+        this.candidateValues = new String[capacity];
+        this.candidateCounts = new long[capacity];
+    }
+
+    /**
+     * Counts the tracked argument values of the given slow call.
+     *
+     * @param call the slow call
+     */
+    void offer(IpcCall call) {
+        if (sketch.length == 0) {
+            return;
+        }
+
+        final Map<String, Object> values = call.getArguments();
+        final StringBuilder value = new StringBuilder();
+
+        for (String argument : arguments) {
+            final Object raw = values.get(argument);
+            if (raw == null) {
+                continue;
+            }
+
+            value.setLength(0);
+            BoundedRenderer.render(value, raw, SlowestCalls.MAX_VALUE_LENGTH, SlowestCalls.MAX_DEPTH);
+            final String rendered = value.toString();
+
+            synchronized (this) {
+                add(argument, rendered);
+            }
+        }
+    }
+
+    private void add(String argument, String value) {
+        total++;
+
+        // double hashing, see Kirsch and Mitzenmacher, "Less Hashing, Same Performance"
+        final int first = argument.hashCode() * 31 + value.hashCode();
+        final int second = mix(first) | 1;
+
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            final int column = ((first + row * second) & Integer.MAX_VALUE) % WIDTH;
+            final int index = row * WIDTH + column;
+            sketch[index]++;
+            estimate = Math.min(estimate, sketch[index]);
+        }
+
+        int lowest = -1;
+        for (int i = 0; i < size; i++) {
+            if (candidateValues[i].equals(value) && candidateArguments[i].equals(argument)) {
+                candidateCounts[i] = estimate;
+                return;
+            } else if (lowest == -1 || candidateCounts[i] < candidateCounts[lowest]) {
+                lowest = i;
+            }
+        }
+
+        if (size < candidateCounts.length) {
+            set(size++, argument, value, estimate);
+        } else if (estimate > candidateCounts[lowest]) {
+            set(lowest, argument, value, estimate);
+        }
+    }
+
+    private void set(int index, String argument, String value, long estimate) {
+        candidateArguments[index] = argument;
+        candidateValues[index] = value;
+        candidateCounts[index] = estimate;
+    }
+
+    private static int mix(int hash) {
+        // murmur3 finalizer
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Returns the argument values with the highest estimated counts.
+     *
+     * @return an immutable list of the heavy hitters, highest count first
+     */
+    public List<HeavyHitter> getHitters() {
+        final HeavyHitter[] copy;
+
+        synchronized (this) {
+            copy = new HeavyHitter[size];
+            for (int i = 0; i < size; i++) {
+                copy[i] = new HeavyHitter(candidateArguments[i], candidateValues[i], candidateCounts[i]);
+            }
+        }
+
+        Arrays.sort(copy, HIGHEST_FIRST);
+        return ImmutableList.copyOf(copy);
+    }
+
+    /**
+     * Returns the number of argument values counted so far, which
+     * allows relating the estimates to all slow calls.
+     *
+     * @return the number of counted values
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the tracked argument keys.
+     *
+     * @return an immutable list of the tracked argument keys
+     */
+    public List<String> getArguments() {
+        return ImmutableList.copyOf(arguments);
+    }
+
+    /**
+     * Removes all counts and candidates.
+     */
+    public synchronized void clear() {
+        Arrays.fill(sketch, 0L);
+        Arrays.fill(candidateArguments, null);
+        Arrays.fill(candidateValues, null);
+        Arrays.fill(candidateCounts, 0L);
+        size = 0;
+        total = 0L;
+    }
+
+}
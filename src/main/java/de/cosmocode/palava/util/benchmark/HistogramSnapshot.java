@@ -0,0 +1,143 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable point-in-time copy of a {@link LatencyHistogram}.
+ * All values are in nanoseconds.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long min;
+
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long min, long max) {
+        this.counts = counts;
+        this.sum = sum;
+
+        long total = 0L;
+        for (long value : counts) {
+            total += value;
+        }
+
+        this.count = total;
+        this.min = total == 0L ? 0L : min;
+        this.max = total == 0L ? 0L : max;
+    }
+
+    /**
+     * Returns the bucket counts of this snapshot.
+     *
+     * @return the internal, mutable bucket counts
+     */
+    long[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the smallest recorded value.
+     *
+     * @return the minimum in nanoseconds or 0 if this snapshot is empty
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the maximum in nanoseconds or 0 if this snapshot is empty
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of all recorded values.
+     *
+     * @return the mean in nanoseconds or 0 if this snapshot is empty
+     */
+    public double getMean() {
+        return count == 0L ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of all recorded values fall,
+     * e.g. {@code getPercentile(99.9)} for the p99.9.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated value in nanoseconds or 0 if this snapshot is empty
+     * @throws IllegalArgumentException if percentile is out of range
+     */
+    public long getPercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0.0 && percentile <= 100.0,
+            "%s is not between 0 and 100", percentile);
+
+        if (count == 0L) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0L;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, LatencyHistogram.upperBoundOf(i)));
+            }
+        }
+
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HistogramSnapshot{count=%d, mean=%.0f, p50=%d, p99=%d, p99.9=%d, max=%d}",
+            count, getMean(), getPercentile(50.0), getPercentile(99.0), getPercentile(99.9), max);
+    }
+
+}
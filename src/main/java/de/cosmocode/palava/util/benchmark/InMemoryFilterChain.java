@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilter;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * An immutable, thread-safe {@link IpcCallFilterChain} which passes calls through
+ * a fixed list of filters and finally executes the command.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class InMemoryFilterChain implements IpcCallFilterChain {
+
+    private final IpcCallFilterChain head;
+
+    InMemoryFilterChain(IpcCallFilter... filters) {
+        IpcCallFilterChain next = new Execution();
+        for (IpcCallFilter filter : Lists.reverse(Lists.newArrayList(filters))) {
+            next = new Link(Preconditions.checkNotNull(filter, "Filter"), next);
+        }
+        this.head = next;
+    }
+
+    InMemoryFilterChain(List<? extends IpcCallFilter> filters) {
+        this(filters.toArray(new IpcCallFilter[filters.size()]));
+    }
+
+    @Override
+    public Map<String, Object> filter(IpcCall call, IpcCommand command) throws IpcCommandExecutionException {
+        return head.filter(call, command);
+    }
+
+    /**
+     * Passes a call to a single filter.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class Link implements IpcCallFilterChain {
+
+        private final IpcCallFilter filter;
+
+        private final IpcCallFilterChain next;
+
+        Link(IpcCallFilter filter, IpcCallFilterChain next) {
+            this.filter = filter;
+            this.next = next;
+        }
+
+        @Override
+        public Map<String, Object> filter(IpcCall call, IpcCommand command) throws IpcCommandExecutionException {
+            return filter.filter(call, command, next);
+        }
+
+    }
+
+    /**
+     * The end of every chain, which executes the command.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class Execution implements IpcCallFilterChain {
+
+        @Override
+        public Map<String, Object> filter(IpcCall call, IpcCommand command) throws IpcCommandExecutionException {
+            final Map<String, Object> result = Maps.newHashMap();
+            command.execute(call, result);
+            return result;
+        }
+
+    }
+
+}
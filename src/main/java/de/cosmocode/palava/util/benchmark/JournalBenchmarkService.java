@@ -0,0 +1,312 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * A {@link BenchmarkService} which appends fixed-size binary records to a rotating
+ * set of memory-mapped files. See {@link JournalFormat} for the file layout and
+ * {@link JournalReader} to read a journal.
+ *
+ * <p>
+ *   The next file is created and mapped ahead of time by a dedicated background
+ *   thread, which also flushes full files to disk and deletes old ones. Rotating
+ *   therefore only swaps buffers on the calling thread, so the journal can be bound
+ *   directly without an {@link AsyncBenchmarkService} in front of it.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class JournalBenchmarkService implements BenchmarkService, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalBenchmarkService.class);
+
+    private final File directory;
+
+    private final Map<Class<? extends IpcCommand>, Integer> ids = Maps.newHashMap();
+
+    private final Map<String, Integer> known = Maps.newHashMap();
+
+    private int fileSize = 64 * 1024 * 1024;
+
+    private int files = 16;
+
+    private Writer dictionary;
+
+    private MappedByteBuffer buffer;
+
+    // sequence of the current file
+    private long sequence;
+
+    // maps the next file and flushes full ones
+    private ExecutorService rotator;
+
+    private Future<MappedByteBuffer> next;
+
+    private int nextId = 1;
+
+    @Inject
+    JournalBenchmarkService(@Named(JournalBenchmarkServiceConfig.DIRECTORY) File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+    }
+
+    @Inject(optional = true)
+    void setFileSize(@Named(JournalBenchmarkServiceConfig.FILE_SIZE) int fileSize) {
+        Preconditions.checkArgument(fileSize >= JournalFormat.HEADER_SIZE + JournalFormat.RECORD_SIZE,
+            "File size %s is too small", fileSize);
+        this.fileSize = fileSize;
+    }
+
+    @Inject(optional = true)
+    void setFiles(@Named(JournalBenchmarkServiceConfig.FILES) int files) {
+        Preconditions.checkArgument(files > 0, "Files must be positive");
+        this.files = files;
+    }
+
+    @Override
+    public synchronized void initialize() throws LifecycleException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new LifecycleException(new IOException("Unable to create " + directory));
+        }
+
+        try {
+            for (Map.Entry<Integer, String> entry : JournalFormat.readDictionary(directory).entrySet()) {
+                known.put(entry.getValue(), entry.getKey());
+                nextId = Math.max(nextId, entry.getKey().intValue() + 1);
+            }
+
+            final File file = new File(directory, JournalFormat.DICTIONARY);
+            dictionary = new OutputStreamWriter(new FileOutputStream(file, true), JournalFormat.CHARSET);
+
+            final File[] existing = JournalFormat.dataFiles(directory);
+            sequence = existing.length == 0 ? 1L : JournalFormat.sequenceOf(existing[existing.length - 1]) + 1L;
+            buffer = map(sequence);
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+
+        rotator = Executors.newSingleThreadExecutor(new RotatorThreadFactory());
+        prepare(null);
+    }
+
+    @Override
+    public synchronized void log(BenchmarkRecord record) {
+        if (buffer == null) {
+            return;
+        }
+
+        final ResourceUsage usage = record.getUsage();
+        final long duration = record.getNanos();
+        final long start = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(duration);
+
+        try {
+            final int id = idOf(record.getCommand());
+
+            if (buffer.remaining() < JournalFormat.RECORD_SIZE) {
+                rotate();
+            }
+
+            final int position = buffer.position();
+            buffer.putLong(position + 4, start);
+            buffer.putLong(position + 12, duration);
+            buffer.putInt(position + 20, record.getArguments().size());
+            buffer.putInt(position + 24, record.getResult().size());
+            buffer.putInt(position + 28, 0);
+            buffer.putLong(position + 32, usage.getCpuTime());
+            buffer.putLong(position + 40, usage.getAllocatedBytes());
+            // the id is written last, readers treat id 0 as end of file
+            buffer.putInt(position, id);
+            buffer.position(position + JournalFormat.RECORD_SIZE);
+        } catch (IOException e) {
+            LOG.error("Unable to write benchmark journal to " + directory, e);
+        }
+    }
+
+    private int idOf(Class<? extends IpcCommand> command) throws IOException {
+        final Integer cached = ids.get(command);
+        if (cached != null) {
+            return cached.intValue();
+        }
+
+        Integer id = known.get(command.getName());
+
+        if (id == null) {
+            id = Integer.valueOf(nextId++);
+            known.put(command.getName(), id);
+            dictionary.write(id + "\t" + command.getName() + "\n");
+            dictionary.flush();
+        }
+
+        ids.put(command, id);
+        return id.intValue();
+    }
+
+    private void rotate() throws IOException {
+        final MappedByteBuffer full = buffer;
+
+        try {
+            // usually mapped long ago, waits only if files fill up faster than they can be mapped
+            buffer = next.get();
+        } catch (ExecutionException e) {
+            // try again with the next record
+            prepare(null);
+            throw (IOException) new IOException("Unable to map next benchmark journal").initCause(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for next benchmark journal");
+        }
+
+        sequence++;
+        prepare(full);
+        LOG.debug("Rotated benchmark journal to {}", JournalFormat.dataFile(directory, sequence));
+    }
+
+    /**
+     * Flushes the given full buffer, deletes old files and maps the file following
+     * the current one in the background.
+     *
+     * @param full the buffer to flush, may be null
+     */
+    private void prepare(final MappedByteBuffer full) {
+        final long current = sequence;
+
+        next = rotator.submit(new Callable<MappedByteBuffer>() {
+
+            @Override
+            public MappedByteBuffer call() throws IOException {
+                if (full != null) {
+                    full.force();
+                }
+                delete(current);
+                return map(current + 1L);
+            }
+
+        });
+    }
+
+    private MappedByteBuffer map(long number) throws IOException {
+        final File file = JournalFormat.dataFile(directory, number);
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        final MappedByteBuffer mapped;
+
+        try {
+            randomAccessFile.setLength(fileSize);
+            final FileChannel channel = randomAccessFile.getChannel();
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0L, fileSize);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        mapped.putInt(JournalFormat.MAGIC);
+        mapped.putInt(JournalFormat.VERSION);
+        mapped.putLong(System.currentTimeMillis());
+        return mapped;
+    }
+
+    private void delete(long current) {
+        for (File file : JournalFormat.dataFiles(directory)) {
+            // keeps the current file and the ones before it, up to the configured number
+            if (JournalFormat.sequenceOf(file) > current - files) {
+                break;
+            } else if (file.delete()) {
+                LOG.debug("Deleted old benchmark journal {}", file);
+            } else {
+                LOG.warn("Unable to delete old benchmark journal {}", file);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void dispose() throws LifecycleException {
+        if (rotator != null) {
+            rotator.shutdown();
+            try {
+                next.get();
+                // the next file has never been used
+                final File unused = JournalFormat.dataFile(directory, sequence + 1L);
+                if (!unused.delete()) {
+                    LOG.warn("Unable to delete unused benchmark journal {}", unused);
+                }
+            } catch (ExecutionException e) {
+                LOG.warn("Unable to map next benchmark journal", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+
+        if (dictionary != null) {
+            try {
+                dictionary.close();
+            } catch (IOException e) {
+                throw new LifecycleException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon thread mapping and flushing journal files.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class RotatorThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "benchmark-journal-rotator");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.lang.annotation.Annotation;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Binds {@link BenchmarkService} to {@link JournalBenchmarkService}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class JournalBenchmarkServiceModule implements Module {
+
+    private final Key<BenchmarkService> key;
+
+    public JournalBenchmarkServiceModule() {
+        this.key = Key.get(BenchmarkService.class);
+    }
+
+    private JournalBenchmarkServiceModule(Class<? extends Annotation> annotation) {
+        this.key = Key.get(BenchmarkService.class, annotation);
+    }
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(key).to(JournalBenchmarkService.class).in(Singleton.class);
+    }
+
+    /**
+     * Creates a module which binds {@link JournalBenchmarkService} using the given
+     * binding annotation, e.g. {@link Asynchronous}.
+     *
+     * @param annotation the binding annotation
+     * @return a new module
+     * @throws NullPointerException if annotation is null
+     */
+    public static Module annotatedWith(Class<? extends Annotation> annotation) {
+        Preconditions.checkNotNull(annotation, "Annotation");
+        return new JournalBenchmarkServiceModule(annotation);
+    }
+
+    /**
+     * Creates a module which adds {@link JournalBenchmarkService} as {@link Sink}
+     * of the {@link CompositeBenchmarkService}.
+     *
+     * @return a new module
+     */
+    public static Module asSink() {
+        return new Module() {
+
+            @Override
+            public void configure(Binder binder) {
+                binder.bind(JournalBenchmarkService.class).in(Singleton.class);
+                CompositeBenchmarkServiceModule.addSink(binder).to(JournalBenchmarkService.class);
+            }
+
+        };
+    }
+
+}
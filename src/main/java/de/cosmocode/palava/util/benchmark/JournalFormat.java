@@ -0,0 +1,156 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Describes the on-disk layout of a benchmark journal.
+ *
+ * <p>
+ *   A journal directory contains a dictionary file, which maps command ids
+ *   to class names using one {@code id<TAB>name} line per command, and a
+ *   rotating set of fixed-size data files. Every data file starts with a
+ *   {@value #HEADER_SIZE} byte header (magic, version, creation time) followed
+ *   by {@value #RECORD_SIZE} byte records:
+ * </p>
+ * <pre>
+ * int  command id (starting at 1, 0 marks the end of the file)
+ * long start in milliseconds since epoch
+ * long duration in nanoseconds
+ * int  argument count
+ * int  result size
+ * int  reserved
+ * long cpu time in nanoseconds, -1 if unknown
+ * long allocated bytes, -1 if unknown
+ * </pre>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class JournalFormat {
+
+    static final int MAGIC = 0x50424A4C;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    static final int RECORD_SIZE = 48;
+
+    static final String DICTIONARY = "commands.dict";
+
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final Pattern DATA_FILE = Pattern.compile("journal-\\d{10}\\.bin");
+
+    private static final FilenameFilter FILTER = new FilenameFilter() {
+
+        @Override
+        public boolean accept(File directory, String name) {
+            return DATA_FILE.matcher(name).matches();
+        }
+
+    };
+
+    private JournalFormat() {
+
+    }
+
+    /**
+     * Returns the data file with the given sequence number.
+     *
+     * @param directory the journal directory
+     * @param sequence the sequence number
+     * @return the data file
+     */
+    static File dataFile(File directory, long sequence) {
+        return new File(directory, String.format("journal-%010d.bin", sequence));
+    }
+
+    /**
+     * Parses the sequence number of the given data file.
+     *
+     * @param file the data file
+     * @return the sequence number
+     */
+    static long sequenceOf(File file) {
+        final String name = file.getName();
+        return Long.parseLong(name.substring("journal-".length(), name.length() - ".bin".length()));
+    }
+
+    /**
+     * Lists all data files of the given directory, oldest first.
+     *
+     * @param directory the journal directory
+     * @return all data files in ascending sequence order
+     */
+    static File[] dataFiles(File directory) {
+        final File[] files = directory.listFiles(FILTER);
+        if (files == null) {
+            return new File[0];
+        } else {
+            // names are zero padded, so the natural order equals the sequence order
+            Arrays.sort(files);
+            return files;
+        }
+    }
+
+    /**
+     * Reads the dictionary of the given directory.
+     *
+     * @param directory the journal directory
+     * @return a mutable map of command ids to command class names
+     * @throws IOException if reading failed
+     */
+    static Map<Integer, String> readDictionary(File directory) throws IOException {
+        final Map<Integer, String> dictionary = Maps.newHashMap();
+        final File file = new File(directory, DICTIONARY);
+
+        if (!file.exists()) {
+            return dictionary;
+        }
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    dictionary.put(Integer.valueOf(line.substring(0, tab)), line.substring(tab + 1));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return dictionary;
+    }
+
+}
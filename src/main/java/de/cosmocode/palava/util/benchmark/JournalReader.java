@@ -0,0 +1,132 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Streams the records of a benchmark journal written by the journal
+ * {@link BenchmarkService}, oldest first. Data files are mapped one at
+ * a time, so arbitrarily large journals can be read with constant memory.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class JournalReader implements Iterable<JournalRecord> {
+
+    private final File directory;
+
+    public JournalReader(File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the journal can't be read
+     */
+    @Override
+    public Iterator<JournalRecord> iterator() {
+        final Map<Integer, String> dictionary;
+
+        try {
+            dictionary = JournalFormat.readDictionary(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final File[] files = JournalFormat.dataFiles(directory);
+
+        return new AbstractIterator<JournalRecord>() {
+
+            private int index;
+
+            private MappedByteBuffer buffer;
+
+            @Override
+            protected JournalRecord computeNext() {
+                while (true) {
+                    if (buffer != null && buffer.remaining() >= JournalFormat.RECORD_SIZE) {
+                        final int id = buffer.getInt();
+                        if (id != 0) {
+                            return read(id);
+                        }
+                    }
+
+                    if (index == files.length) {
+                        return endOfData();
+                    }
+
+                    buffer = open(files[index++]);
+                }
+            }
+
+            private JournalRecord read(int id) {
+                final long start = buffer.getLong();
+                final long duration = buffer.getLong();
+                final int argumentCount = buffer.getInt();
+                final int resultSize = buffer.getInt();
+                buffer.getInt();
+                final long cpuTime = buffer.getLong();
+                final long allocatedBytes = buffer.getLong();
+
+                final String name = dictionary.get(Integer.valueOf(id));
+                final String command = name == null ? "unknown#" + id : name;
+                return new JournalRecord(command, start, duration, argumentCount, resultSize, cpuTime, allocatedBytes);
+            }
+
+        };
+    }
+
+    private static MappedByteBuffer open(File file) {
+        try {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+
+                Preconditions.checkState(buffer.remaining() >= JournalFormat.HEADER_SIZE,
+                    "%s is no benchmark journal", file);
+                Preconditions.checkState(buffer.getInt() == JournalFormat.MAGIC,
+                    "%s is no benchmark journal", file);
+
+                final int version = buffer.getInt();
+                Preconditions.checkState(version == JournalFormat.VERSION,
+                    "%s has unsupported version %s", file, version);
+
+                // creation time
+                buffer.getLong();
+                return buffer;
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
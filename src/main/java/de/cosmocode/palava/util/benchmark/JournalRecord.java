@@ -0,0 +1,122 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * A single record of a benchmark journal, as returned by the {@link JournalReader}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class JournalRecord {
+
+    private final String command;
+
+    private final long start;
+
+    private final long duration;
+
+    private final int argumentCount;
+
+    private final int resultSize;
+
+    private final long cpuTime;
+
+    private final long allocatedBytes;
+
+    JournalRecord(String command, long start, long duration, int argumentCount, int resultSize,
+        long cpuTime, long allocatedBytes) {
+        this.command = command;
+        this.start = start;
+        this.duration = duration;
+        this.argumentCount = argumentCount;
+        this.resultSize = resultSize;
+        this.cpuTime = cpuTime;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Returns the fully qualified class name of the called command.
+     *
+     * @return the command class name
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns the point in time the call started.
+     *
+     * @return the start in milliseconds since epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the time the call took.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the number of arguments of the call.
+     *
+     * @return the argument count
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * Returns the number of entries in the result of the call.
+     *
+     * @return the result size
+     */
+    public int getResultSize() {
+        return resultSize;
+    }
+
+    /**
+     * Returns the cpu time the call consumed.
+     *
+     * @return the cpu time in nanoseconds or {@link ResourceUsage#UNKNOWN}
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * Returns the number of bytes the call allocated.
+     *
+     * @return the allocated bytes or {@link ResourceUsage#UNKNOWN}
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JournalRecord{command=%s, start=%d, duration=%d, argumentCount=%d, resultSize=%d, " +
+            "cpuTime=%d, allocatedBytes=%d}", command, start, duration, argumentCount, resultSize,
+            cpuTime, allocatedBytes);
+    }
+
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A lock-free, fixed-size latency histogram with nanosecond resolution.
+ *
+ * <p>
+ *   Values are sorted into log-linear buckets: every power of two is split
+ *   into {@value #SUB_BUCKETS} linear sub buckets, which bounds the relative
+ *   error of reported percentiles to roughly 6%. Values beyond 2^{@value #MAX_EXPONENT}
+ *   nanoseconds (about 73 minutes) are counted in the last bucket.
+ * </p>
+ *
+ * <p>
+ *   Buckets, sum, min and max are kept in {@value #CELLS} {@link AtomicLongCells},
+ *   which may be located outside of the heap (see {@link AggregateStorage}).
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 4;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    static final int MAX_EXPONENT = 42;
+
+    static final int LENGTH = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    static final int CELLS = LENGTH + 3;
+
+    private static final int SUM = LENGTH;
+
+    private static final int MIN = LENGTH + 1;
+
+    private static final int MAX = LENGTH + 2;
+
+    private final AtomicLongCells cells;
+
+    public LatencyHistogram() {
+        this(new HeapAggregateStore.HeapCells(CELLS));
+    }
+
+    LatencyHistogram(AtomicLongCells cells) {
+        Preconditions.checkArgument(cells.length() == CELLS, "Histograms require %s cells", CELLS);
+        this.cells = cells;
+        cells.set(MIN, Long.MAX_VALUE);
+    }
+
+    /**
+     * Records the given value.
+     *
+     * @param nanos the measured time in nanoseconds, negative values are treated as zero
+     */
+    public void record(long nanos) {
+        final long value = nanos < 0L ? 0L : nanos;
+        cells.add(indexOf(value), 1L);
+        cells.add(SUM, value);
+        updateMin(value);
+        updateMax(value);
+    }
+
+    private void updateMin(long value) {
+        long current = cells.get(MIN);
+        while (value < current && !cells.compareAndSet(MIN, current, value)) {
+            current = cells.get(MIN);
+        }
+    }
+
+    private void updateMax(long value) {
+        long current = cells.get(MAX);
+        while (value > current && !cells.compareAndSet(MAX, current, value)) {
+            current = cells.get(MAX);
+        }
+    }
+
+    /**
+     * Writes the non-empty buckets, sum, min and max of this histogram.
+     *
+     * @param output the output to write to
+     * @throws IOException if writing failed
+     */
+    void writeTo(DataOutput output) throws IOException {
+        final HistogramSnapshot snapshot = snapshot();
+        final long[] counts = snapshot.getCounts();
+
+        int used = 0;
+        for (long count : counts) {
+            if (count > 0L) {
+                used++;
+            }
+        }
+
+        output.writeInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0L) {
+                output.writeShort(i);
+                output.writeLong(counts[i]);
+            }
+        }
+
+        output.writeLong(snapshot.getSum());
+        output.writeLong(snapshot.getMin());
+        output.writeLong(snapshot.getMax());
+    }
+
+    /**
+     * Reads a histogram written by {@link #writeTo(DataOutput)} and adds its values to this histogram.
+     *
+     * @param input the input to read from
+     * @throws IOException if reading failed or the data is corrupt
+     */
+    void mergeFrom(DataInput input) throws IOException {
+        final int used = input.readInt();
+        final long[] counts = new long[LENGTH];
+
+        for (int i = 0; i < used; i++) {
+            final int index = input.readShort();
+            if (index < 0 || index >= LENGTH) {
+                throw new IOException(String.format("Invalid bucket index %s", index));
+            }
+            counts[index] = input.readLong();
+        }
+
+        final long mergedSum = input.readLong();
+        final long mergedMin = input.readLong();
+        final long mergedMax = input.readLong();
+
+        if (used == 0) {
+            return;
+        }
+
+        for (int i = 0; i < LENGTH; i++) {
+            if (counts[i] > 0L) {
+                cells.add(i, counts[i]);
+            }
+        }
+
+        cells.add(SUM, mergedSum);
+        updateMin(mergedMin);
+        updateMax(mergedMax);
+    }
+
+    /**
+     * Creates a snapshot of all values recorded so far.
+     *
+     * @return a new snapshot
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] counts = new long[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            counts[i] = cells.get(i);
+        }
+        return new HistogramSnapshot(counts, cells.get(SUM), cells.get(MIN), cells.get(MAX));
+    }
+
+    /**
+     * Creates a snapshot of all values recorded so far and resets this histogram
+     * in the same pass. Values recorded concurrently end up either in the returned
+     * snapshot or in this histogram, but they are never lost.
+     *
+     * @return a new snapshot
+     */
+    public HistogramSnapshot snapshotAndReset() {
+        final long[] counts = new long[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            counts[i] = cells.getAndSet(i, 0L);
+        }
+        return new HistogramSnapshot(counts, cells.getAndSet(SUM, 0L),
+            cells.getAndSet(MIN, Long.MAX_VALUE), cells.getAndSet(MAX, 0L));
+    }
+
+    /**
+     * Resets this histogram.
+     */
+    public void reset() {
+        snapshotAndReset();
+    }
+
+    /**
+     * Computes the bucket index of the given value.
+     *
+     * @param value the non-negative value
+     * @return the bucket index
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+        if (exponent >= MAX_EXPONENT) {
+            return LENGTH - 1;
+        }
+
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Computes the smallest value which is counted in the bucket with the given index.
+     *
+     * @param index the bucket index
+     * @return the lowest value of that bucket
+     */
+    static long lowerBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKETS - 1;
+        final int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    /**
+     * Computes the largest value which is counted in the bucket with the given index.
+     *
+     * @param index the bucket index
+     * @return the highest value of that bucket
+     */
+    static long upperBoundOf(int index) {
+        if (index >= LENGTH - 1) {
+            return Long.MAX_VALUE;
+        } else {
+            return lowerBoundOf(index + 1) - 1L;
+        }
+    }
+
+}
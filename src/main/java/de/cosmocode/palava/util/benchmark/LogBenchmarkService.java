@@ -19,36 +19,133 @@ package de.cosmocode.palava.util.benchmark;
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
-import de.cosmocode.palava.ipc.IpcCall;
-import de.cosmocode.palava.ipc.IpcCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Default implementation of the {@link BenchmarkService} which logs all
- * command executions using its {@link Logger}.
+ * command executions using its {@link Logger}. Messages are only rendered if
+ * debug logging is enabled, using a reused per-thread buffer. Arguments are
+ * rendered with bounded length and depth and the timing tree is rendered on the
+ * same line with bounded length, so huge arguments or deeply traced calls can't
+ * produce huge or multi-line log messages.
  *
  * @author Willi Schoenborn
  */
 final class LogBenchmarkService implements BenchmarkService {
 
+    private static final String[] UNITS = new String[TimeUnit.values().length];
+
+    // from coarse to fine, the first unit not larger than the duration is used
+    private static final TimeUnit[] DISPLAY_UNITS = {
+        TimeUnit.SECONDS, TimeUnit.MILLISECONDS, TimeUnit.MICROSECONDS
+    };
+
+    static {
+        for (TimeUnit unit : TimeUnit.values()) {
+            UNITS[unit.ordinal()] = unit.name().toLowerCase();
+        }
+    }
+
+    private final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+
+    };
+
     private Logger log = LoggerFactory.getLogger(LogBenchmarkService.class);
 
+    private int maxLength = 1024;
+
+    private int maxDepth = 3;
+
     @Inject(optional = true)
     public void setLog(@Named(LogBenchmarkServiceConfig.CATEGORY) Logger log) {
         this.log = Preconditions.checkNotNull(log, "Log");
     }
 
+    @Inject(optional = true)
+    void setMaxLength(@Named(LogBenchmarkServiceConfig.MAX_LENGTH) int maxLength) {
+        Preconditions.checkArgument(maxLength > 0, "Max length must be positive");
+        this.maxLength = maxLength;
+    }
+
+    @Inject(optional = true)
+    void setMaxDepth(@Named(LogBenchmarkServiceConfig.MAX_DEPTH) int maxDepth) {
+        Preconditions.checkArgument(maxDepth > 0, "Max depth must be positive");
+        this.maxDepth = maxDepth;
+    }
+
     @Override
-    public void log(Class<? extends IpcCommand> command, long time, TimeUnit timeUnit, IpcCall call,
-        Map<String, Object> result) {
+    public void log(BenchmarkRecord record) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+
+        final StringBuilder builder = builder();
+
+        final ResourceUsage usage = record.getUsage();
+        final TimingTree timing = record.getTiming();
+
+        builder.append(record.getCommand().getName()).append(" took ");
+        appendDuration(builder, record.getNanos());
+
+        if (usage != ResourceUsage.UNAVAILABLE) {
+            builder.append(" (cpu ").append(usage.getCpuTime()).append(" ns, allocated ");
+            builder.append(usage.getAllocatedBytes()).append(" bytes)");
+        }
+
+        builder.append(" to process ");
+        BoundedRenderer.render(builder, record.getArguments(), maxLength, maxDepth);
+
+        if (!timing.getChildren().isEmpty()) {
+            builder.append(" with spans ");
+            timing.appendInline(builder, maxLength);
+        }
+
+        log.debug(builder.toString());
+    }
+
+    /**
+     * Appends the given duration in the largest unit, up to seconds, which keeps
+     * it at least one, with three decimal places, e.g. {@code 5.912 seconds}.
+     *
+     * @param builder the builder to append to
+     * @param nanos the duration in nanoseconds
+     */
+    static void appendDuration(StringBuilder builder, long nanos) {
+        for (TimeUnit unit : DISPLAY_UNITS) {
+            final long unitNanos = unit.toNanos(1L);
+            if (nanos >= unitNanos) {
+                final long fraction = nanos % unitNanos * 1000L / unitNanos;
+                builder.append(nanos / unitNanos).append('.');
+                if (fraction < 100L) {
+                    builder.append(fraction < 10L ? "00" : "0");
+                }
+                builder.append(fraction).append(' ').append(UNITS[unit.ordinal()]);
+                return;
+            }
+        }
+        builder.append(nanos).append(' ').append(UNITS[TimeUnit.NANOSECONDS.ordinal()]);
+    }
+
+    private StringBuilder builder() {
+        StringBuilder builder = builders.get();
+
+        // don't retain buffers which grew due to an unusually large message
+        if (builder.capacity() > maxLength * 4) {
+            builder = new StringBuilder(256);
+            builders.set(builder);
+        } else {
+            builder.setLength(0);
+        }
 
-        log.debug("{} took {} {} to process {}", new Object[] {
-            command.getName(), time, timeUnit.name().toLowerCase(), call.getArguments()
-        });
+        return builder;
     }
 
 }
@@ -26,6 +26,10 @@ public final class LogBenchmarkServiceConfig {
     public static final String PREFIX = BenchmarkConfig.PREFIX + "log.";
     
     public static final String CATEGORY = PREFIX + "category";
+
+    public static final String MAX_LENGTH = PREFIX + "maxLength";
+
+    public static final String MAX_DEPTH = PREFIX + "maxDepth";
     
     private LogBenchmarkServiceConfig() {
         
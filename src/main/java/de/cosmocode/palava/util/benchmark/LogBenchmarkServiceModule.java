@@ -16,7 +16,11 @@
 
 package de.cosmocode.palava.util.benchmark;
 
+import java.lang.annotation.Annotation;
+
+import com.google.common.base.Preconditions;
 import com.google.inject.Binder;
+import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Singleton;
 
@@ -27,9 +31,52 @@ import com.google.inject.Singleton;
  */
 public final class LogBenchmarkServiceModule implements Module {
 
+    private final Key<BenchmarkService> key;
+
+    public LogBenchmarkServiceModule() {
+        this.key = Key.get(BenchmarkService.class);
+    }
+
+    private LogBenchmarkServiceModule(Class<? extends Annotation> annotation) {
+        this.key = Key.get(BenchmarkService.class, annotation);
+    }
+
     @Override
     public void configure(Binder binder) {
-        binder.bind(BenchmarkService.class).to(LogBenchmarkService.class).in(Singleton.class);
+        binder.bind(key).to(LogBenchmarkService.class).in(Singleton.class);
+    }
+
+    /**
+     * Creates a module which binds {@link LogBenchmarkService} using the given
+     * binding annotation, e.g. {@link Asynchronous}.
+     *
+     * @since 1.5
+     * @param annotation the binding annotation
+     * @return a new module
+     * @throws NullPointerException if annotation is null
+     */
+    public static Module annotatedWith(Class<? extends Annotation> annotation) {
+        Preconditions.checkNotNull(annotation, "Annotation");
+        return new LogBenchmarkServiceModule(annotation);
+    }
+
+    /**
+     * Creates a module which adds {@link LogBenchmarkService} as {@link Sink}
+     * of the {@link CompositeBenchmarkService}.
+     *
+     * @since 1.5
+     * @return a new module
+     */
+    public static Module asSink() {
+        return new Module() {
+
+            @Override
+            public void configure(Binder binder) {
+                binder.bind(LogBenchmarkService.class).in(Singleton.class);
+                CompositeBenchmarkServiceModule.addSink(binder).to(LogBenchmarkService.class);
+            }
+
+        };
     }
 
 }
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link AggregateStore} which carves cells out of an arena of direct
+ * {@link ByteBuffer}s. The arena grows in chunks of {@value #CHUNK_SIZE} bytes.
+ * Histogram buckets, window slots and split times live off-heap, while each command
+ * still keeps a few small objects on the heap, e.g. its scalar counters, cell views,
+ * slowest calls and heavy hitters.
+ *
+ * <p>
+ *   {@link ByteBuffer} offers no atomic operations, so cells are updated
+ *   using {@code sun.misc.Unsafe} on the buffer's address, which is confined to
+ *   {@link UnsafeAccess}. All cells are 8 byte aligned, which is required for
+ *   atomic long access on all platforms.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class OffHeapAggregateStore implements AggregateStore {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapAggregateStore.class);
+
+    private ByteBuffer chunk;
+
+    private long address;
+
+    private int position;
+
+    private long footprint;
+
+    private OffHeapAggregateStore() {
+
+    }
+
+    /**
+     * Creates an off-heap store if supported by the running virtual machine.
+     *
+     * @return a new off-heap store or a heap store if off-heap storage is not supported
+     */
+    static AggregateStore create() {
+        if (isSupported()) {
+            return new OffHeapAggregateStore();
+        } else {
+            LOG.warn("Off-heap benchmark aggregates are not supported, falling back to heap");
+            return new HeapAggregateStore();
+        }
+    }
+
+    private static boolean isSupported() {
+        try {
+            // checked before UnsafeAccess is loaded, which would fail to link otherwise
+            Class.forName("sun.misc.Unsafe");
+        } catch (ClassNotFoundException e) {
+            LOG.debug("Unsafe is not available", e);
+            return false;
+        }
+
+        try {
+            return UnsafeAccess.isAvailable();
+        } catch (LinkageError e) {
+            LOG.debug("Unsafe is not accessible", e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized AtomicLongCells allocate(int length) {
+        Preconditions.checkArgument(length >= 0, "Length must not be negative");
+        final int bytes = length * 8;
+
+        if (chunk == null || position + bytes > chunk.capacity() - 8) {
+            // 8 additional bytes to align the first cell
+            chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, bytes) + 8);
+            final long base = UnsafeAccess.addressOf(chunk);
+            address = (base + 7L) & ~7L;
+            position = 0;
+            footprint += chunk.capacity();
+        }
+
+        final OffHeapCells cells = new OffHeapCells(chunk, address + position, length);
+        position += bytes;
+        return cells;
+    }
+
+    @Override
+    public synchronized long getFootprint() {
+        return footprint;
+    }
+
+    @Override
+    public AggregateStorage getStorage() {
+        return AggregateStorage.OFF_HEAP;
+    }
+
+    /**
+     * Cells located in a direct buffer.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class OffHeapCells implements AtomicLongCells {
+
+        // keeps the direct memory reachable as long as these cells are in use
+        @SuppressWarnings("unused")
+        private final ByteBuffer chunk;
+
+        private final long base;
+
+        private final int length;
+
+        OffHeapCells(ByteBuffer chunk, long base, int length) {
+            this.chunk = chunk;
+            this.base = base;
+            this.length = length;
+        }
+
+        private long addressOf(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(String.format("%s is not between 0 and %s", index, length));
+            }
+            return base + index * 8L;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public long get(int index) {
+            return UnsafeAccess.getLongVolatile(addressOf(index));
+        }
+
+        @Override
+        public void set(int index, long value) {
+            UnsafeAccess.putLongVolatile(addressOf(index), value);
+        }
+
+        @Override
+        public void add(int index, long delta) {
+            final long address = addressOf(index);
+            long current;
+            do {
+                current = UnsafeAccess.getLongVolatile(address);
+            } while (!UnsafeAccess.compareAndSwapLong(address, current, current + delta));
+        }
+
+        @Override
+        public long getAndSet(int index, long value) {
+            final long address = addressOf(index);
+            long current;
+            do {
+                current = UnsafeAccess.getLongVolatile(address);
+            } while (!UnsafeAccess.compareAndSwapLong(address, current, value));
+            return current;
+        }
+
+        @Override
+        public boolean compareAndSet(int index, long expect, long update) {
+            return UnsafeAccess.compareAndSwapLong(addressOf(index), expect, update);
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * Specifies how the {@link AsyncBenchmarkService} behaves if its buffer is full.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discards the record and increments the dropped counter. The calling
+     * thread is never blocked.
+     */
+    DROP,
+
+    /**
+     * Blocks the calling thread until there is space in the buffer.
+     */
+    BLOCK;
+
+}
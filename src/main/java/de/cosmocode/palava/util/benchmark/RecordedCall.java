@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * A single call read from a recording, see {@link RecordedCalls}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class RecordedCall {
+
+    private final Class<? extends IpcCommand> command;
+
+    private final Map<String, Object> arguments;
+
+    private final IpcCall call;
+
+    public RecordedCall(Class<? extends IpcCommand> command, Map<String, ?> arguments) {
+        this.command = Preconditions.checkNotNull(command, "Command");
+        this.arguments = ImmutableMap.<String, Object>copyOf(Preconditions.checkNotNull(arguments, "Arguments"));
+        this.call = SyntheticCalls.of(this.arguments);
+    }
+
+    /**
+     * Returns the recorded command type.
+     *
+     * @return the command type
+     */
+    public Class<? extends IpcCommand> getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns the recorded arguments.
+     *
+     * @return an immutable map of the arguments
+     */
+    public Map<String, Object> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Returns a detached call carrying the recorded arguments. The call is
+     * immutable and may be passed to several filter chains concurrently.
+     * Commands which need the call's connection or session can't be replayed.
+     *
+     * @return the call
+     */
+    public IpcCall toCall() {
+        return call;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecordedCall{command=%s, arguments=%s}", command.getName(), arguments);
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.commons.reflect.Reflection;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Reads and writes recordings of calls.
+ *
+ * <p>
+ *   A recording is a UTF-8 text file containing one call per line. Every line
+ *   consists of the command's class name followed by its arguments, separated
+ *   by tabs. Every argument is written as {@code key=value}, both url encoded.
+ *   Blank lines and lines starting with {@code #} are ignored. Argument values
+ *   are replayed as strings.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class RecordedCalls {
+
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private RecordedCalls() {
+
+    }
+
+    /**
+     * Reads all calls of the given recording.
+     *
+     * @param file the recording
+     * @return a mutable list of all recorded calls, in file order
+     * @throws IOException if reading failed, a line is malformed or refers to an unknown command
+     */
+    public static List<RecordedCall> read(File file) throws IOException {
+        Preconditions.checkNotNull(file, "File");
+        final List<RecordedCall> calls = Lists.newArrayList();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.trim().length() > 0 && !line.startsWith("#")) {
+                    calls.add(parse(line, number));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return calls;
+    }
+
+    private static RecordedCall parse(String line, int number) throws IOException {
+        final String[] parts = line.split("\t");
+        final Class<? extends IpcCommand> command = commandOf(parts[0].trim(), number);
+        final Map<String, Object> arguments = Maps.newLinkedHashMap();
+
+        for (int i = 1; i < parts.length; i++) {
+            final int separator = parts[i].indexOf('=');
+            if (separator <= 0) {
+                throw new IOException(String.format("Line %s: malformed argument '%s'", number, parts[i]));
+            }
+            final String key = URLDecoder.decode(parts[i].substring(0, separator), CHARSET.name());
+            final String value = URLDecoder.decode(parts[i].substring(separator + 1), CHARSET.name());
+            arguments.put(key, value);
+        }
+
+        return new RecordedCall(command, arguments);
+    }
+
+    private static Class<? extends IpcCommand> commandOf(String name, int number) throws IOException {
+        final Class<?> type;
+
+        try {
+            type = Reflection.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(String.format("Line %s: unknown command %s", number, name));
+        }
+
+        if (IpcCommand.class.isAssignableFrom(type)) {
+            return type.asSubclass(IpcCommand.class);
+        } else {
+            throw new IOException(String.format("Line %s: %s is no command", number, name));
+        }
+    }
+
+    /**
+     * Writes the given calls to the given recording, replacing its content.
+     * Argument values are written using {@link String#valueOf(Object)}.
+     *
+     * @param file the recording
+     * @param calls the calls to write
+     * @throws IOException if writing failed
+     */
+    public static void write(File file, Iterable<RecordedCall> calls) throws IOException {
+        Preconditions.checkNotNull(file, "File");
+        Preconditions.checkNotNull(calls, "Calls");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), CHARSET);
+
+        try {
+            for (RecordedCall call : calls) {
+                writer.write(call.getCommand().getName());
+                for (Map.Entry<String, Object> entry : call.getArguments().entrySet()) {
+                    writer.write('\t');
+                    writer.write(encode(entry.getKey()));
+                    writer.write('=');
+                    writer.write(encode(String.valueOf(entry.getValue())));
+                }
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, CHARSET.name());
+    }
+
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Replays recorded calls through an {@link IpcCallFilterChain} to reproduce
+ * production load in process.
+ *
+ * <p>
+ *   Calls are taken from the recording in order, wrapping around at the end,
+ *   and executed by {@link #setConcurrency(int) concurrency} threads. If a
+ *   {@link #setRate(double) rate} is configured, calls are started on a fixed
+ *   schedule and their latency is measured from their scheduled start, so
+ *   the time calls wait for a free thread is included (there is no coordinated
+ *   omission). Without a {@link #setDuration(long, TimeUnit) duration}, every
+ *   recorded call is replayed exactly once.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class Replay {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Replay.class);
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private final List<RecordedCall> calls;
+
+    private final IpcCallFilterChain chain;
+
+    private final CommandRegistry registry;
+
+    private int concurrency = 1;
+
+    private double rate;
+
+    private long duration;
+
+    public Replay(List<RecordedCall> calls, IpcCallFilterChain chain, CommandRegistry registry) {
+        Preconditions.checkNotNull(calls, "Calls");
+        Preconditions.checkArgument(!calls.isEmpty(), "Calls must not be empty");
+        this.calls = ImmutableList.copyOf(calls);
+        this.chain = Preconditions.checkNotNull(chain, "Chain");
+        this.registry = Preconditions.checkNotNull(registry, "Registry");
+    }
+
+    public void setConcurrency(int concurrency) {
+        Preconditions.checkArgument(concurrency > 0, "Concurrency must be positive");
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets the total number of calls started per second.
+     *
+     * @param rate the rate in calls per second, 0 for as fast as possible
+     */
+    public void setRate(double rate) {
+        Preconditions.checkArgument(rate >= 0.0, "Rate must not be negative");
+        this.rate = rate;
+    }
+
+    /**
+     * Sets the time calls are replayed.
+     *
+     * @param duration the duration, 0 to replay every call once
+     * @param unit the unit of duration
+     */
+    public void setDuration(long duration, TimeUnit unit) {
+        Preconditions.checkArgument(duration >= 0L, "Duration must not be negative");
+        Preconditions.checkNotNull(unit, "Unit");
+        this.duration = unit.toNanos(duration);
+    }
+
+    /**
+     * Replays the calls and blocks until all replaying threads are finished.
+     *
+     * @return the report
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public ReplayReport run() throws InterruptedException {
+        final Map<Class<? extends IpcCommand>, LatencyHistogram> histograms = Maps.newHashMap();
+        for (RecordedCall call : calls) {
+            if (!histograms.containsKey(call.getCommand())) {
+                histograms.put(call.getCommand(), new LatencyHistogram());
+                // create commands upfront, creating them is not part of the measurement
+                registry.get(call.getCommand());
+            }
+        }
+
+        final LatencyHistogram total = new LatencyHistogram();
+        final AtomicLong sequence = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final long interval = rate == 0.0 ? 0L : Math.max(1L, (long) (NANOS_PER_SECOND / rate));
+        final List<Callable<Void>> workers = Lists.newArrayList();
+
+        final long start = System.nanoTime();
+        final long end = duration == 0L ? Long.MAX_VALUE : start + duration;
+
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(new Worker(histograms, total, sequence, errors, start, end, interval));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+
+        try {
+            executor.invokeAll(workers);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long elapsed = System.nanoTime() - start;
+
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, HistogramSnapshot> commands = ImmutableMap.builder();
+        for (Map.Entry<Class<? extends IpcCommand>, LatencyHistogram> entry : histograms.entrySet()) {
+            commands.put(entry.getKey(), entry.getValue().snapshot());
+        }
+
+        return new ReplayReport(elapsed, errors.get(), total.snapshot(), commands.build());
+    }
+
+    /**
+     * Replays calls until the end of the recording or the configured duration is reached.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private final class Worker implements Callable<Void> {
+
+        private final Map<Class<? extends IpcCommand>, LatencyHistogram> histograms;
+
+        private final LatencyHistogram total;
+
+        private final AtomicLong sequence;
+
+        private final AtomicLong errors;
+
+        private final long start;
+
+        private final long end;
+
+        private final long interval;
+
+        Worker(Map<Class<? extends IpcCommand>, LatencyHistogram> histograms, LatencyHistogram total,
+            AtomicLong sequence, AtomicLong errors, long start, long end, long interval) {
+            this.histograms = histograms;
+            this.total = total;
+            this.sequence = sequence;
+            this.errors = errors;
+            this.start = start;
+            this.end = end;
+            this.interval = interval;
+        }
+
+        @Override
+        public Void call() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final long index = sequence.getAndIncrement();
+                if (duration == 0L && index >= calls.size()) {
+                    return null;
+                }
+
+                final long scheduled = interval == 0L ? System.nanoTime() : start + index * interval;
+                if (scheduled - end >= 0L) {
+                    return null;
+                }
+
+                long remaining = scheduled - System.nanoTime();
+                while (remaining > 0L) {
+                    LockSupport.parkNanos(remaining);
+                    remaining = scheduled - System.nanoTime();
+                }
+
+                final RecordedCall recorded = calls.get((int) (index % calls.size()));
+                execute(recorded);
+
+                final long latency = System.nanoTime() - scheduled;
+                histograms.get(recorded.getCommand()).record(latency);
+                total.record(latency);
+            }
+            return null;
+        }
+
+        private void execute(RecordedCall recorded) {
+            try {
+                chain.filter(recorded.toCall(), registry.get(recorded.getCommand()));
+            } catch (IpcCommandExecutionException e) {
+                errors.incrementAndGet();
+                LOG.debug("Replaying {} failed: {}", recorded, e);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                LOG.debug("Replaying {} failed: {}", recorded, e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * The result of a {@link Replay}. All latencies are in nanoseconds.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class ReplayReport {
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1L);
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private final long elapsed;
+
+    private final long errors;
+
+    private final HistogramSnapshot total;
+
+    private final Map<Class<? extends IpcCommand>, HistogramSnapshot> commands;
+
+    ReplayReport(long elapsed, long errors, HistogramSnapshot total,
+        Map<Class<? extends IpcCommand>, HistogramSnapshot> commands) {
+        this.elapsed = elapsed;
+        this.errors = errors;
+        this.total = total;
+        this.commands = commands;
+    }
+
+    /**
+     * Returns the wall clock time of the replay.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the number of replayed calls, including failed ones.
+     *
+     * @return the number of calls
+     */
+    public long getCalls() {
+        return total.getCount();
+    }
+
+    /**
+     * Returns the number of calls which failed with an exception.
+     *
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the number of calls completed per second.
+     *
+     * @return the throughput in calls per second
+     */
+    public double getThroughput() {
+        return elapsed == 0L ? 0.0 : total.getCount() * NANOS_PER_SECOND / elapsed;
+    }
+
+    /**
+     * Returns the latency distribution of all calls.
+     *
+     * @return the latencies of all calls
+     */
+    public HistogramSnapshot getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the latency distribution per command.
+     *
+     * @return an immutable map of all replayed commands and their latencies
+     */
+    public Map<Class<? extends IpcCommand>, HistogramSnapshot> getCommands() {
+        return commands;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%d calls, %d errors in %.3f s, %.1f calls/s%n",
+            total.getCount(), errors, elapsed / NANOS_PER_SECOND, getThroughput()));
+        builder.append(String.format("%-60s %10s %10s %10s %10s %10s %10s %10s%n",
+            "command (latencies in us)", "count", "mean", "p50", "p90", "p99", "p999", "max"));
+        for (Map.Entry<Class<? extends IpcCommand>, HistogramSnapshot> entry : commands.entrySet()) {
+            append(builder, entry.getKey().getName(), entry.getValue());
+        }
+        append(builder, "total", total);
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, HistogramSnapshot snapshot) {
+        builder.append(String.format("%-60s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+            snapshot.getCount(), snapshot.getMean() / NANOS_PER_MICRO,
+            snapshot.getPercentile(50.0) / NANOS_PER_MICRO, snapshot.getPercentile(90.0) / NANOS_PER_MICRO,
+            snapshot.getPercentile(99.0) / NANOS_PER_MICRO, snapshot.getPercentile(99.9) / NANOS_PER_MICRO,
+            snapshot.getMax() / NANOS_PER_MICRO));
+    }
+
+}
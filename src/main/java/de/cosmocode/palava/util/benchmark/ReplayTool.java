@@ -0,0 +1,140 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+import de.cosmocode.commons.reflect.Reflection;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCallFilter;
+
+/**
+ * Command line entry point of {@link Replay}.
+ *
+ * <pre>
+ * ReplayTool &lt;recording&gt; [--concurrency=n] [--rate=calls/s] [--duration=seconds]
+ *     [--threshold=millis] [--module=class]... [--filter=class]...
+ * </pre>
+ *
+ * <p>
+ *   Commands and filters are created by an injector built from the given modules.
+ *   Every call passes a {@link BenchmarkFilter} first, which logs calls exceeding
+ *   the threshold including their timing trees using the {@link LogBenchmarkService},
+ *   followed by the given filters in order. The report is printed to standard out.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class ReplayTool {
+
+    private static final String USAGE = "Usage: ReplayTool <recording> [--concurrency=n] [--rate=calls/s] " +
+        "[--duration=seconds] [--threshold=millis] [--module=class]... [--filter=class]...";
+
+    private ReplayTool() {
+
+    }
+
+    /**
+     * Replays a recording.
+     *
+     * @param args the arguments, see class description
+     * @throws IOException if the recording can't be read
+     * @throws InterruptedException if interrupted while replaying
+     * @throws LifecycleException if the benchmark filter can't be initialized
+     * @throws ClassNotFoundException if a module or filter class does not exist
+     * @throws InstantiationException if a module can't be created
+     * @throws IllegalAccessException if a module can't be created
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, LifecycleException,
+        ClassNotFoundException, InstantiationException, IllegalAccessException {
+
+        if (args.length == 0) {
+            System.err.println(USAGE);
+            return;
+        }
+
+        final File recording = new File(args[0]);
+        final List<Module> modules = Lists.newArrayList();
+        final List<String> filterNames = Lists.newArrayList();
+        int concurrency = 1;
+        double rate = 0.0;
+        long duration = 0L;
+        long threshold = 100L;
+
+        for (int i = 1; i < args.length; i++) {
+            final String arg = args[i];
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1) {
+                throw new IllegalArgumentException(String.format("Unknown argument %s. %s", arg, USAGE));
+            }
+
+            final String name = arg.substring(2, separator);
+            final String value = arg.substring(separator + 1);
+
+            if ("concurrency".equals(name)) {
+                concurrency = Integer.parseInt(value);
+            } else if ("rate".equals(name)) {
+                rate = Double.parseDouble(value);
+            } else if ("duration".equals(name)) {
+                duration = Long.parseLong(value);
+            } else if ("threshold".equals(name)) {
+                threshold = Long.parseLong(value);
+            } else if ("module".equals(name)) {
+                modules.add(Reflection.forName(value).asSubclass(Module.class).newInstance());
+            } else if ("filter".equals(name)) {
+                filterNames.add(value);
+            } else {
+                throw new IllegalArgumentException(String.format("Unknown argument %s. %s", arg, USAGE));
+            }
+        }
+
+        final Injector injector = Guice.createInjector(modules);
+
+        final BenchmarkFilter benchmarkFilter = new BenchmarkFilter(new LogBenchmarkService(),
+            new BenchmarkStatistics());
+        benchmarkFilter.setJmx(false);
+        benchmarkFilter.setThreshold(threshold);
+        benchmarkFilter.setThresholdUnit(TimeUnit.MILLISECONDS);
+        benchmarkFilter.initialize();
+
+        final List<IpcCallFilter> filters = Lists.newArrayList();
+        filters.add(benchmarkFilter);
+        for (String filterName : filterNames) {
+            filters.add(injector.getInstance(Reflection.forName(filterName).asSubclass(IpcCallFilter.class)));
+        }
+
+        final Replay replay = new Replay(RecordedCalls.read(recording), new InMemoryFilterChain(filters),
+            new CommandRegistry(injector));
+        replay.setConcurrency(concurrency);
+        replay.setRate(rate);
+        replay.setDuration(duration, TimeUnit.SECONDS);
+
+        final ReplayReport report = replay.run();
+        System.out.print(report);
+        benchmarkFilter.dispose();
+    }
+
+}
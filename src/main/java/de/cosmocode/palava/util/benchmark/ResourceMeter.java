@@ -0,0 +1,140 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the cpu time and the allocated bytes of the current thread
+ * using the platform {@link ThreadMXBean}, if the jvm supports it.
+ *
+ * <p>
+ *   Both measurements are switched on or off for the whole jvm. The meter only
+ *   switches them on if asked to, otherwise values are only available if they have
+ *   been enabled elsewhere, e.g. using jmx or jvm flags.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class ResourceMeter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceMeter.class);
+
+    // not referenced directly, so jvms without it don't fail to load this class
+    private static final String SUN_BEAN = "com.sun.management.ThreadMXBean";
+
+    private final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    private final boolean cpuTimeEnabled;
+
+    private final boolean allocationEnabled;
+
+    ResourceMeter(boolean enable) {
+        this.cpuTimeEnabled = enableCpuTime(enable);
+        this.allocationEnabled = enableAllocation(enable);
+    }
+
+    private boolean enableCpuTime(boolean enable) {
+        if (!bean.isCurrentThreadCpuTimeSupported()) {
+            LOG.info("Thread cpu time measurement is not supported by this jvm");
+            return false;
+        } else if (bean.isThreadCpuTimeEnabled()) {
+            return true;
+        } else if (enable) {
+            bean.setThreadCpuTimeEnabled(true);
+            return true;
+        } else {
+            LOG.info("Thread cpu time measurement is disabled, set {} to enable it",
+                BenchmarkConfig.ENABLE_THREAD_MEASUREMENT);
+            return false;
+        }
+    }
+
+    private boolean enableAllocation(boolean enable) {
+        try {
+            Class.forName(SUN_BEAN);
+        } catch (ClassNotFoundException e) {
+            LOG.info("Thread allocation measurement is not supported by this jvm");
+            return false;
+        }
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            LOG.info("Thread allocation measurement is not supported by this jvm");
+            return false;
+        }
+
+        final com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+
+        if (!sun.isThreadAllocatedMemorySupported()) {
+            LOG.info("Thread allocation measurement is not supported by this jvm");
+            return false;
+        } else if (sun.isThreadAllocatedMemoryEnabled()) {
+            return true;
+        } else if (enable) {
+            sun.setThreadAllocatedMemoryEnabled(true);
+            return true;
+        } else {
+            LOG.info("Thread allocation measurement is disabled, set {} to enable it",
+                BenchmarkConfig.ENABLE_THREAD_MEASUREMENT);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the cpu time of the current thread.
+     *
+     * @return the cpu time in nanoseconds or {@link ResourceUsage#UNKNOWN}
+     */
+    long cpuTime() {
+        return cpuTimeEnabled ? bean.getCurrentThreadCpuTime() : ResourceUsage.UNKNOWN;
+    }
+
+    /**
+     * Returns the total number of bytes allocated by the current thread.
+     *
+     * @return the allocated bytes or {@link ResourceUsage#UNKNOWN}
+     */
+    long allocatedBytes() {
+        if (allocationEnabled) {
+            final com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            return ResourceUsage.UNKNOWN;
+        }
+    }
+
+    /**
+     * Computes the difference of two measurements.
+     *
+     * @param before the value before the call
+     * @param after the value after the call
+     * @return the difference or {@link ResourceUsage#UNKNOWN} if one value is unknown
+     */
+    static long difference(long before, long after) {
+        if (before == ResourceUsage.UNKNOWN || after == ResourceUsage.UNKNOWN) {
+            return ResourceUsage.UNKNOWN;
+        } else {
+            return after - before;
+        }
+    }
+
+}
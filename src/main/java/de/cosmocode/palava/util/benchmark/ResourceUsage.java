@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * Immutable value holding the cpu time and heap allocation of a single call,
+ * measured on the calling thread.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class ResourceUsage {
+
+    /**
+     * Marks an unknown value.
+     */
+    public static final long UNKNOWN = -1L;
+
+    /**
+     * Used if resource measuring is disabled or unsupported.
+     */
+    public static final ResourceUsage UNAVAILABLE = new ResourceUsage(UNKNOWN, UNKNOWN);
+
+    private final long cpuTime;
+
+    private final long allocatedBytes;
+
+    ResourceUsage(long cpuTime, long allocatedBytes) {
+        this.cpuTime = cpuTime;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Returns the cpu time spent by the calling thread.
+     *
+     * @return the cpu time in nanoseconds or {@link #UNKNOWN}
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the calling thread.
+     *
+     * @return the allocated bytes or {@link #UNKNOWN}
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResourceUsage{cpuTime=%d, allocatedBytes=%d}", cpuTime, allocatedBytes);
+    }
+
+}
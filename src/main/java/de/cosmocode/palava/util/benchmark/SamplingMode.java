@@ -0,0 +1,43 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * Specifies which calls the {@link BenchmarkFilter} records.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public enum SamplingMode {
+
+    /**
+     * Every call is recorded.
+     */
+    ALL,
+
+    /**
+     * On average one in {@link BenchmarkConfig#SAMPLE_RATE} calls is recorded.
+     */
+    PROBABILISTIC,
+
+    /**
+     * At most {@link BenchmarkConfig#MAX_RECORDS_PER_SECOND} calls per command
+     * and second are recorded.
+     */
+    RATE_LIMITED;
+
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Aggregates the calls of a single command over the last
+ * {@value #MAX_MINUTES} minutes to provide sliding-window rates and latencies.
+ *
+ * <p>
+ *   Calls are recorded in a ring of one minute slots. A slot is recycled
+ *   lazily by the first call of a new minute which maps to it, so old data
+ *   rotates out without a global reset. The buckets, call count and latency sum
+ *   of a slot are allocated from the {@link AggregateStore} on first use, so rarely
+ *   called commands occupy only a few slots.
+ * </p>
+ *
+ * <p>
+ *   A window of n minutes consists of the last n completed minutes and the
+ *   current, partial one.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class SlidingWindows {
+
+    public static final int MAX_MINUTES = 15;
+
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1L);
+
+    // one additional slot for the current, partial minute
+    private static final int SLOTS = MAX_MINUTES + 1;
+
+    // buckets followed by the call count and the latency sum
+    private static final int CELLS = LatencyHistogram.LENGTH + 2;
+
+    private static final int CALLS = LatencyHistogram.LENGTH;
+
+    private static final int SUM = LatencyHistogram.LENGTH + 1;
+
+    private final Slot[] slots = new Slot[SLOTS];
+
+    SlidingWindows(AggregateStore store) {
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new Slot(store);
+        }
+    }
+
+    /**
+     * Records a sampled call.
+     *
+     * @param nanos the measured time in nanoseconds
+     * @param weight the number of calls this sample represents
+     */
+    void record(long nanos, int weight) {
+        record(nanos, weight, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a sampled call at the given point in time.
+     *
+     * @param nanos the measured time in nanoseconds
+     * @param weight the number of calls this sample represents
+     * @param now the current time in milliseconds
+     */
+    void record(long nanos, int weight, long now) {
+        final long minute = now / MILLIS_PER_MINUTE;
+        final Slot slot = slots[(int) (minute % SLOTS)];
+
+        if (slot.epoch != minute) {
+            slot.recycle(minute);
+        }
+
+        final long value = nanos < 0L ? 0L : nanos;
+        slot.cells.add(LatencyHistogram.indexOf(value), 1L);
+        slot.cells.add(CALLS, weight);
+        slot.cells.add(SUM, value);
+    }
+
+    /**
+     * Creates a snapshot of the last n minutes.
+     *
+     * @param minutes the window length, between 1 and {@value #MAX_MINUTES}
+     * @return a new snapshot
+     * @throws IllegalArgumentException if minutes is out of range
+     */
+    public WindowSnapshot snapshot(int minutes) {
+        return snapshot(minutes, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a snapshot of the n minutes before the given point in time.
+     *
+     * @param minutes the window length, between 1 and {@value #MAX_MINUTES}
+     * @param now the current time in milliseconds
+     * @return a new snapshot
+     * @throws IllegalArgumentException if minutes is out of range
+     */
+    WindowSnapshot snapshot(int minutes, long now) {
+        Preconditions.checkArgument(minutes >= 1 && minutes <= MAX_MINUTES,
+            "%s is not between 1 and %s", minutes, MAX_MINUTES);
+
+        final long current = now / MILLIS_PER_MINUTE;
+        final long[] counts = new long[LatencyHistogram.LENGTH];
+        long calls = 0L;
+        long sum = 0L;
+
+        for (Slot slot : slots) {
+            final long epoch = slot.epoch;
+            if (epoch < current - minutes || epoch > current) {
+                continue;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += slot.cells.get(i);
+            }
+            calls += slot.cells.get(CALLS);
+            sum += slot.cells.get(SUM);
+        }
+
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0L) {
+                last = i;
+                if (first == -1) {
+                    first = i;
+                }
+            }
+        }
+
+        final long min = first == -1 ? 0L : LatencyHistogram.lowerBoundOf(first);
+        final long max;
+
+        if (last == -1) {
+            max = 0L;
+        } else if (last == counts.length - 1) {
+            // the last bucket is unbounded
+            max = LatencyHistogram.lowerBoundOf(last);
+        } else {
+            max = LatencyHistogram.upperBoundOf(last);
+        }
+
+        final long elapsed = minutes * MILLIS_PER_MINUTE + now % MILLIS_PER_MINUTE;
+        final double rate = calls * 1000.0 / elapsed;
+        return new WindowSnapshot(minutes, calls, rate, new HistogramSnapshot(counts, sum, min, max));
+    }
+
+    /**
+     * Creates a snapshot of the last minute.
+     *
+     * @return a new snapshot
+     */
+    public WindowSnapshot oneMinute() {
+        return snapshot(1);
+    }
+
+    /**
+     * Creates a snapshot of the last five minutes.
+     *
+     * @return a new snapshot
+     */
+    public WindowSnapshot fiveMinutes() {
+        return snapshot(5);
+    }
+
+    /**
+     * Creates a snapshot of the last fifteen minutes.
+     *
+     * @return a new snapshot
+     */
+    public WindowSnapshot fifteenMinutes() {
+        return snapshot(MAX_MINUTES);
+    }
+
+    /**
+     * Discards all recorded calls.
+     */
+    public void reset() {
+        for (Slot slot : slots) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * A single minute of the ring.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class Slot {
+
+        private final AggregateStore store;
+
+        // allocated on first use and published by the volatile write of epoch
+        private AtomicLongCells cells;
+
+        private volatile long epoch = -1L;
+
+        private Slot(AggregateStore store) {
+            this.store = store;
+        }
+
+        private synchronized void recycle(long minute) {
+            if (epoch == minute) {
+                // another thread recycled this slot already
+                return;
+            }
+            if (cells == null) {
+                cells = store.allocate(CELLS);
+            } else {
+                for (int i = 0; i < CELLS; i++) {
+                    cells.set(i, 0L);
+                }
+            }
+            epoch = minute;
+        }
+
+        private synchronized void clear() {
+            epoch = -1L;
+        }
+
+    }
+
+}
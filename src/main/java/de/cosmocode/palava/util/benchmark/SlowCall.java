@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Map;
+
+/**
+ * A single slow call retained by {@link SlowestCalls}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class SlowCall {
+
+    private final long duration;
+
+    private final long timestamp;
+
+    private final Map<String, String> arguments;
+
+    SlowCall(long duration, long timestamp, Map<String, String> arguments) {
+        this.duration = duration;
+        this.timestamp = timestamp;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Returns the time the call took.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the point in time the call finished.
+     *
+     * @return the timestamp in milliseconds since epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns a truncated copy of the call's arguments. Values are rendered up to
+     * {@value SlowestCalls#MAX_VALUE_LENGTH} characters and a nesting depth of
+     * {@value SlowestCalls#MAX_DEPTH}, at most {@value SlowestCalls#MAX_ARGUMENTS}
+     * arguments are retained.
+     *
+     * @return an immutable map of the truncated arguments
+     */
+    public Map<String, String> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SlowCall{duration=%d, timestamp=%d, arguments=%s}", duration, timestamp, arguments);
+    }
+
+}
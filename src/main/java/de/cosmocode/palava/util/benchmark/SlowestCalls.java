@@ -0,0 +1,164 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import de.cosmocode.palava.ipc.IpcCall;
+
+/**
+ * A bounded collection of the slowest calls of a single command.
+ *
+ * <p>
+ *   Once full, the duration of the fastest retained call is published using
+ *   a volatile field, so calls which would not make it into the collection
+ *   are rejected without locking and without copying their arguments.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class SlowestCalls {
+
+    static final int MAX_ARGUMENTS = 16;
+
+    static final int MAX_VALUE_LENGTH = 256;
+
+    static final int MAX_DEPTH = 3;
+
+    private static final Comparator<SlowCall> SLOWEST_FIRST = new Comparator<SlowCall>() {
+
+        @Override
+        public int compare(SlowCall left, SlowCall right) {
+            if (left.getDuration() == right.getDuration()) {
+                return 0;
+            } else {
+                return left.getDuration() < right.getDuration() ? 1 : -1;
+            }
+        }
+
+    };
+
+    private final SlowCall[] calls;
+
+    private int size;
+
+    private int fastest;
+
+    private volatile long minimum = -1L;
+
+    SlowestCalls(int capacity) {
+        Preconditions.checkArgument(capacity >= 0, "Capacity must not be negative");
+        this.calls = new SlowCall[capacity];
+    }
+
+    /**
+     * Offers the given call.
+     *
+     * @param nanos the measured time in nanoseconds
+     * @param call the call
+     */
+    void offer(long nanos, IpcCall call) {
+        if (calls.length == 0 || nanos <= minimum) {
+            return;
+        }
+
+        final SlowCall slowCall = new SlowCall(nanos, System.currentTimeMillis(), truncate(call.getArguments()));
+
+        synchronized (this) {
+            if (size < calls.length) {
+                calls[size++] = slowCall;
+                if (size < calls.length) {
+                    return;
+                }
+            } else if (nanos > calls[fastest].getDuration()) {
+                calls[fastest] = slowCall;
+            } else {
+                return;
+            }
+
+            fastest = 0;
+            for (int i = 1; i < size; i++) {
+                if (calls[i].getDuration() < calls[fastest].getDuration()) {
+                    fastest = i;
+                }
+            }
+            minimum = calls[fastest].getDuration();
+        }
+    }
+
+    private static Map<String, String> truncate(Map<String, Object> arguments) {
+        final ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        final StringBuilder value = new StringBuilder();
+        int count = 0;
+
+        for (Map.Entry<String, Object> entry : arguments.entrySet()) {
+            if (count++ == MAX_ARGUMENTS) {
+                break;
+            }
+            // large values are never rendered as a whole
+            value.setLength(0);
+            BoundedRenderer.render(value, entry.getValue(), MAX_VALUE_LENGTH, MAX_DEPTH);
+            builder.put(entry.getKey(), value.toString());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the retained calls.
+     *
+     * @return an immutable list of the retained calls, slowest first
+     */
+    public List<SlowCall> getCalls() {
+        final SlowCall[] copy;
+
+        synchronized (this) {
+            copy = Arrays.copyOf(calls, size);
+        }
+
+        Arrays.sort(copy, SLOWEST_FIRST);
+        return ImmutableList.copyOf(copy);
+    }
+
+    /**
+     * Returns the maximum number of retained calls.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return calls.length;
+    }
+
+    /**
+     * Removes all retained calls.
+     */
+    public synchronized void clear() {
+        Arrays.fill(calls, null);
+        size = 0;
+        fastest = 0;
+        minimum = -1L;
+    }
+
+}
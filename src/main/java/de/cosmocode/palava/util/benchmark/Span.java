@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * A timed section of a measured call, opened using {@link Spans#open(String)}.
+ * Spans are pooled per thread and reused once the measured call finished,
+ * so they must be closed exactly once, by the thread which opened them,
+ * and must not be kept afterwards.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class Span {
+
+    static final Span NOOP = new Span(null, -1);
+
+    private final SpanStack stack;
+
+    private final int index;
+
+    String name;
+
+    long start;
+
+    long end;
+
+    int parent;
+
+    Span(SpanStack stack, int index) {
+        this.stack = stack;
+        this.index = index;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Closes this span and makes its parent the current span again.
+     */
+    public void close() {
+        if (stack != null) {
+            stack.close(this);
+        }
+    }
+
+}
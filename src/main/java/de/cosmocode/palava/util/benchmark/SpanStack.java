@@ -0,0 +1,146 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The per-thread span pool of the span api. The {@link BenchmarkFilter} activates
+ * the stack by opening the root span of a measured call. All spans opened until the
+ * root span is closed are kept, so the complete tree can be reported, and
+ * the pool is reset afterwards. Use {@link #current()} to get the stack
+ * of the current thread.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class SpanStack {
+
+    static final int CAPACITY = 128;
+
+    private static final ThreadLocal<SpanStack> CURRENT = new ThreadLocal<SpanStack>() {
+
+        @Override
+        protected SpanStack initialValue() {
+            return new SpanStack();
+        }
+
+    };
+
+    private final Span[] pool = new Span[CAPACITY];
+
+    private int size;
+
+    private int current = -1;
+
+    SpanStack() {
+        for (int i = 0; i < CAPACITY; i++) {
+            pool[i] = new Span(this, i);
+        }
+    }
+
+    /**
+     * Returns the stack of the current thread.
+     *
+     * @return the current thread's stack
+     */
+    static SpanStack current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Opens the root span of a measured call or a child span of the current
+     * span, if this stack is already active.
+     *
+     * @param name the name of the span
+     * @return the opened span
+     */
+    Span openRoot(String name) {
+        return size == CAPACITY ? Span.NOOP : push(name);
+    }
+
+    /**
+     * Opens a child span of the current span, if this stack is active.
+     *
+     * @param name the name of the span
+     * @return the opened span or {@link Span#NOOP}
+     */
+    Span open(String name) {
+        return size == 0 || size == CAPACITY ? Span.NOOP : push(name);
+    }
+
+    private Span push(String name) {
+        final Span span = pool[size++];
+        span.name = name;
+        span.parent = current;
+        span.end = TimingTree.UNKNOWN;
+        span.start = System.nanoTime();
+        current = span.getIndex();
+        return span;
+    }
+
+    /**
+     * Closes the given span. Closing the root span resets this stack.
+     *
+     * @param span the span to close
+     */
+    void close(Span span) {
+        if (span.getIndex() >= size) {
+            // already reset, e.g. a span closed after its measured call finished
+            return;
+        }
+        span.end = System.nanoTime();
+        current = span.parent;
+        if (current == -1) {
+            size = 0;
+        }
+    }
+
+    /**
+     * Copies the given span and all of its descendants into an immutable tree.
+     * Must be called before the span is closed if it is the root span.
+     *
+     * @param span the span
+     * @param end the end of the span, as it may not be closed yet
+     * @return a new timing tree
+     */
+    TimingTree tree(Span span, long end) {
+        if (span == Span.NOOP) {
+            return TimingTree.UNAVAILABLE;
+        } else {
+            return tree(span.getIndex(), span.start, end);
+        }
+    }
+
+    private TimingTree tree(int index, long origin, long end) {
+        final Span span = pool[index];
+        final ImmutableList.Builder<TimingTree> children = ImmutableList.builder();
+
+        for (int i = index + 1; i < size; i++) {
+            if (pool[i].parent == index) {
+                children.add(tree(i, origin, pool[i].end));
+            }
+        }
+
+        final long duration = end == TimingTree.UNKNOWN ? TimingTree.UNKNOWN : end - span.start;
+        final List<TimingTree> list = children.build();
+        return new TimingTree(span.name, span.start - origin, duration, list);
+    }
+
+}
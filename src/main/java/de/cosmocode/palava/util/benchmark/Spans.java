@@ -0,0 +1,58 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * Static entry point to the span api. Command code and filters running inside a call
+ * measured by the {@link BenchmarkFilter} can open child spans, which are reported
+ * as {@link TimingTree} for slow calls:
+ *
+ * <pre>
+ * final Span span = Spans.open("load");
+ * try {
+ *     ...
+ * } finally {
+ *     span.close();
+ * }
+ * </pre>
+ *
+ * <p>
+ *   Outside of measured calls, or once the per-thread pool of
+ *   {@value SpanStack#CAPACITY} spans is exhausted, a no-op span is returned.
+ *   Opening a span neither allocates nor locks.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class Spans {
+
+    private Spans() {
+
+    }
+
+    /**
+     * Opens a new span as child of the current span of this thread.
+     *
+     * @param name the name of the span
+     * @return the new span, never null
+     */
+    public static Span open(String name) {
+        return SpanStack.current().open(name);
+    }
+
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+
+/**
+ * Factory for detached {@link IpcCall}s which are not bound to any connection.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class SyntheticCalls {
+
+    private SyntheticCalls() {
+
+    }
+
+    /**
+     * Creates a call with the given arguments. All methods of the returned call
+     * except {@link IpcCall#getArguments()} return null, false or 0. Typed getters
+     * of the arguments, e.g. {@code getInt(key)}, convert string values to the
+     * requested type and throw an {@link IllegalArgumentException} if the key is
+     * missing or the value can't be converted.
+     *
+     * @param arguments the arguments
+     * @return a new call
+     */
+    static IpcCall of(Map<String, ?> arguments) {
+        Preconditions.checkNotNull(arguments, "Arguments");
+        final Map<String, Object> copy = ImmutableMap.<String, Object>copyOf(arguments);
+        final IpcArguments ipcArguments = proxy(IpcArguments.class, new ArgumentsHandler(copy));
+        return proxy(IpcCall.class, new CallHandler(ipcArguments));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SyntheticCalls.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == char.class) {
+            return Character.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else {
+            return Void.class;
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == char.class) {
+            return Character.valueOf((char) 0);
+        } else if (type == byte.class) {
+            return Byte.valueOf((byte) 0);
+        } else if (type == short.class) {
+            return Short.valueOf((short) 0);
+        } else if (type == int.class) {
+            return Integer.valueOf(0);
+        } else if (type == long.class) {
+            return Long.valueOf(0L);
+        } else if (type == float.class) {
+            return Float.valueOf(0F);
+        } else {
+            return Double.valueOf(0D);
+        }
+    }
+
+    /**
+     * Handles calls on the {@link IpcCall} proxy.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class CallHandler implements InvocationHandler {
+
+        private final IpcArguments arguments;
+
+        CallHandler(IpcArguments arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getArguments".equals(method.getName())) {
+                return arguments;
+            } else if ("toString".equals(method.getName())) {
+                return "SyntheticCall" + arguments;
+            } else if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            } else if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            } else {
+                return defaultValue(method.getReturnType());
+            }
+        }
+
+    }
+
+    /**
+     * Handles calls on the {@link IpcArguments} proxy by delegating all
+     * {@link Map} methods to an immutable map. Typed getters convert the
+     * recorded values, which are usually strings, to the requested type
+     * and fail on missing keys.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class ArgumentsHandler implements InvocationHandler {
+
+        private final Map<String, Object> arguments;
+
+        ArgumentsHandler(Map<String, Object> arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass().isAssignableFrom(Map.class)) {
+                try {
+                    return method.invoke(arguments, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            } else if (args != null && args.length == 1 && args[0] instanceof String) {
+                // typed getters, e.g. getString(key) or getInt(key)
+                final String key = String.class.cast(args[0]);
+                final Object value = arguments.get(key);
+                if (value == null) {
+                    throw new IllegalArgumentException(String.format("Missing argument '%s'", key));
+                }
+                return convert(key, value, method.getReturnType());
+            } else {
+                return defaultValue(method.getReturnType());
+            }
+        }
+
+        private Object convert(String key, Object value, Class<?> type) {
+            final Class<?> boxed = boxed(type);
+            if (boxed.isInstance(value)) {
+                return value;
+            } else if (boxed == String.class) {
+                return value.toString();
+            }
+
+            final Object converted;
+
+            try {
+                if (value instanceof Number) {
+                    converted = convert(Number.class.cast(value), boxed);
+                } else if (value instanceof String) {
+                    converted = parse(String.class.cast(value), boxed);
+                } else {
+                    converted = null;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format(
+                    "Argument '%s' is not a valid %s: '%s'", key, type.getSimpleName(), value), e);
+            }
+
+            if (converted == null) {
+                throw new IllegalArgumentException(String.format(
+                    "Argument '%s' can't be converted to %s: '%s'", key, type.getSimpleName(), value));
+            } else {
+                return converted;
+            }
+        }
+
+        private Object convert(Number number, Class<?> type) {
+            if (type == Integer.class) {
+                return number.intValue();
+            } else if (type == Long.class) {
+                return number.longValue();
+            } else if (type == Double.class) {
+                return number.doubleValue();
+            } else if (type == Float.class) {
+                return number.floatValue();
+            } else if (type == Short.class) {
+                return number.shortValue();
+            } else if (type == Byte.class) {
+                return number.byteValue();
+            } else {
+                return null;
+            }
+        }
+
+        private Object parse(String value, Class<?> type) {
+            if (type == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (type == Long.class) {
+                return Long.valueOf(value);
+            } else if (type == Double.class) {
+                return Double.valueOf(value);
+            } else if (type == Float.class) {
+                return Float.valueOf(value);
+            } else if (type == Short.class) {
+                return Short.valueOf(value);
+            } else if (type == Byte.class) {
+                return Byte.valueOf(value);
+            } else if (type == Boolean.class && ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value))) {
+                return Boolean.valueOf(value);
+            } else if (type == Character.class && value.length() == 1) {
+                return value.charAt(0);
+            } else {
+                return null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Overrides the configured {@link BenchmarkConfig#THRESHOLD} for the annotated
+ * {@link IpcCommand}. Calls taking longer than the specified threshold are
+ * passed to the {@link BenchmarkService}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Threshold {
+
+    /**
+     * The threshold in the specified {@link #unit()}.
+     */
+    long value();
+
+    /**
+     * The unit of {@link #value()}. Slow calls are always reported with nanosecond precision.
+     */
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An immutable tree of the {@link Span}s of a single measured call. The root
+ * represents the call itself, its children the spans opened during the call.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class TimingTree {
+
+    public static final long UNKNOWN = -1L;
+
+    /**
+     * Used if the call has not been traced.
+     */
+    public static final TimingTree UNAVAILABLE = new TimingTree("unavailable", 0L, UNKNOWN,
+        ImmutableList.<TimingTree>of());
+
+    private final String name;
+
+    private final long offset;
+
+    private final long duration;
+
+    private final List<TimingTree> children;
+
+    TimingTree(String name, long offset, long duration, List<TimingTree> children) {
+        this.name = name;
+        this.offset = offset;
+        this.duration = duration;
+        this.children = children;
+    }
+
+    /**
+     * Returns the name of the span.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the time between the start of the call and the start of this span.
+     *
+     * @return the offset in nanoseconds
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the time this span took.
+     *
+     * @return the duration in nanoseconds or {@link #UNKNOWN} if the span hasn't been closed
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the child spans.
+     *
+     * @return an immutable list of child spans, ordered by start
+     */
+    public List<TimingTree> getChildren() {
+        return children;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        appendTo(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends an indented representation of this tree to the given builder.
+     *
+     * @param builder the target builder
+     */
+    void appendTo(StringBuilder builder) {
+        appendTo(builder, 0);
+    }
+
+    private void appendTo(StringBuilder builder, int depth) {
+        for (int i = 0; i < depth; i++) {
+            builder.append("  ");
+        }
+        appendSpan(builder);
+        for (TimingTree child : children) {
+            builder.append('\n');
+            child.appendTo(builder, depth + 1);
+        }
+    }
+
+    /**
+     * Appends a single line representation of this tree to the given builder,
+     * e.g. {@code root +0ns 300ns [a +10ns 100ns, b +150ns unclosed]}. The appended
+     * text is truncated after the given number of characters.
+     *
+     * @param builder the target builder
+     * @param maxLength the maximum number of characters to append, excluding the truncation marker
+     */
+    void appendInline(StringBuilder builder, int maxLength) {
+        final int limit = builder.length() + maxLength;
+        if (!appendBounded(builder, limit)) {
+            builder.setLength(Math.min(builder.length(), limit));
+            builder.append(BoundedRenderer.TRUNCATED);
+        }
+    }
+
+    private boolean appendBounded(StringBuilder builder, int limit) {
+        appendSpan(builder);
+        if (children.isEmpty()) {
+            return builder.length() <= limit;
+        }
+        builder.append(" [");
+        boolean first = true;
+        for (TimingTree child : children) {
+            if (builder.length() > limit) {
+                return false;
+            } else if (first) {
+                first = false;
+            } else {
+                builder.append(", ");
+            }
+            if (!child.appendBounded(builder, limit)) {
+                return false;
+            }
+        }
+        builder.append(']');
+        return builder.length() <= limit;
+    }
+
+    private void appendSpan(StringBuilder builder) {
+        builder.append(name).append(" +").append(offset).append("ns ");
+        if (duration == UNKNOWN) {
+            builder.append("unclosed");
+        } else {
+            builder.append(duration).append("ns");
+        }
+    }
+
+}
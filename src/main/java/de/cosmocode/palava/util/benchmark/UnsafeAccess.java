@@ -0,0 +1,132 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sun.misc.Unsafe;
+
+/**
+ * Confines all uses of {@link Unsafe} required by the {@link OffHeapAggregateStore}
+ * to a single class. This class is only loaded once the {@link OffHeapAggregateStore}
+ * verified that {@link Unsafe} exists, so virtual machines without it never link against it.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class UnsafeAccess {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnsafeAccess.class);
+
+    private static final Unsafe UNSAFE;
+
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        final Unsafe unsafe = unsafe();
+        final long offset = unsafe == null ? -1L : addressOffset(unsafe);
+        UNSAFE = offset == -1L ? null : unsafe;
+        ADDRESS_OFFSET = offset;
+    }
+
+    private UnsafeAccess() {
+
+    }
+
+    private static Unsafe unsafe() {
+        try {
+            final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (NoSuchFieldException e) {
+            LOG.debug("Unsafe is not available", e);
+            return null;
+        } catch (IllegalAccessException e) {
+            LOG.debug("Unsafe is not accessible", e);
+            return null;
+        } catch (SecurityException e) {
+            LOG.debug("Unsafe is not accessible", e);
+            return null;
+        }
+    }
+
+    private static long addressOffset(Unsafe unsafe) {
+        try {
+            return unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (NoSuchFieldException e) {
+            LOG.debug("Address of direct buffers is not accessible", e);
+            return -1L;
+        }
+    }
+
+    /**
+     * Returns whether direct memory can be accessed atomically.
+     *
+     * @return true if all other methods of this class can be used, false otherwise
+     */
+    static boolean isAvailable() {
+        return UNSAFE != null;
+    }
+
+    /**
+     * Returns the memory address of the given direct buffer.
+     *
+     * @param buffer the direct buffer
+     * @return the address of the buffer's first byte
+     */
+    static long addressOf(ByteBuffer buffer) {
+        return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+    }
+
+    /**
+     * Reads the long at the given address with volatile semantics.
+     *
+     * @param address the 8 byte aligned address
+     * @return the current value
+     */
+    static long getLongVolatile(long address) {
+        return UNSAFE.getLongVolatile(null, address);
+    }
+
+    /**
+     * Writes the long at the given address with volatile semantics.
+     *
+     * @param address the 8 byte aligned address
+     * @param value the new value
+     */
+    static void putLongVolatile(long address, long value) {
+        UNSAFE.putLongVolatile(null, address, value);
+    }
+
+    /**
+     * Atomically sets the long at the given address if it holds the expected value.
+     *
+     * @param address the 8 byte aligned address
+     * @param expect the expected value
+     * @param update the new value
+     * @return true if successful, false if the current value differed from the expected one
+     */
+    static boolean compareAndSwapLong(long address, long expect, long update) {
+        return UNSAFE.compareAndSwapLong(null, address, expect, update);
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * A snapshot of the calls of a single command within a sliding time window,
+ * as created by {@link SlidingWindows}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class WindowSnapshot {
+
+    private final int minutes;
+
+    private final long count;
+
+    private final double rate;
+
+    private final HistogramSnapshot histogram;
+
+    WindowSnapshot(int minutes, long count, double rate, HistogramSnapshot histogram) {
+        this.minutes = minutes;
+        this.count = count;
+        this.rate = rate;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Returns the length of the window.
+     *
+     * @return the window length in minutes
+     */
+    public int getMinutes() {
+        return minutes;
+    }
+
+    /**
+     * Returns the estimated number of calls within the window.
+     *
+     * @return the number of calls
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the average throughput within the window.
+     *
+     * @return the number of calls per second
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Returns the latency distribution of all sampled calls within the window.
+     * Minimum and maximum are only accurate up to the histogram resolution.
+     *
+     * @return the latency histogram
+     */
+    public HistogramSnapshot getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WindowSnapshot{minutes=%d, count=%d, rate=%.2f/s, p99=%d}",
+            minutes, count, rate, histogram.getPercentile(99.0));
+    }
+
+}
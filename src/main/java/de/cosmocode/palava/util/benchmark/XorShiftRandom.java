@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+/**
+ * A cheap, non thread-safe xorshift pseudo random number generator. Use
+ * {@link #current()} to get an instance bound to the current thread.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class XorShiftRandom {
+
+    private static final ThreadLocal<XorShiftRandom> CURRENT = new ThreadLocal<XorShiftRandom>() {
+
+        @Override
+        protected XorShiftRandom initialValue() {
+            return new XorShiftRandom(System.nanoTime() ^ Thread.currentThread().getId());
+        }
+
+    };
+
+    private long state;
+
+    XorShiftRandom(long seed) {
+        this.state = seed == 0L ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    /**
+     * Returns the generator of the current thread.
+     *
+     * @return the current thread's generator
+     */
+    static XorShiftRandom current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the next pseudo random long.
+     *
+     * @return a random long
+     */
+    long nextLong() {
+        long x = state;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        state = x;
+        return x;
+    }
+
+    /**
+     * Returns a pseudo random int between 0 (inclusive) and bound (exclusive).
+     *
+     * @param bound the positive upper bound
+     * @return a random int
+     */
+    int nextInt(int bound) {
+        return (int) ((nextLong() >>> 1) % bound);
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+/**
+ * A clock which caches the current time. The cached time is refreshed by
+ * running the clock periodically, so reading it is a single volatile read
+ * instead of a call to {@link System#currentTimeMillis()}, at the cost of
+ * being behind by up to one period.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+final class CoarseClock implements Runnable {
+
+    private volatile long millis = System.currentTimeMillis();
+
+    /**
+     * Returns the time of the last refresh.
+     *
+     * @return the cached time in milliseconds since epoch
+     */
+    long millis() {
+        return millis;
+    }
+
+    @Override
+    public void run() {
+        millis = System.currentTimeMillis();
+    }
+
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Lists all {@link IpcCommand} implementations of a set of packages using the
+ * index files written at compile time by the {@link CommandIndexProcessor}.
+ *
+ * <p>
+ *   An index file lists the binary class names of all concrete commands of its jar
+ *   or class folder, one per line. All index files of the classpath are merged.
+ *   Jars and class folders without an index, e.g. compiled without the processor,
+ *   are scanned instead, even if other classpath roots index the same packages.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CommandIndex {
+
+    public static final String LOCATION = "META-INF/palava/commands";
+
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommandIndex.class);
+
+    private static final String SUFFIX = ".class";
+
+    private CommandIndex() {
+
+    }
+
+    /**
+     * Lists all commands in the given packages and their sub packages.
+     *
+     * @param packageNames the package names
+     * @return a set of all commands, in index order followed by scanned commands
+     * @throws NullPointerException if packageNames is null
+     */
+    public static Set<Class<? extends IpcCommand>> commandsIn(List<String> packageNames) {
+        final Set<Class<? extends IpcCommand>> commands = indexedIn(packageNames);
+
+        for (File root : unindexedRoots()) {
+            commands.addAll(scan(root, packageNames));
+        }
+
+        return commands;
+    }
+
+    /**
+     * Lists the indexed commands of the given packages and their sub packages.
+     * Commands of classpath roots without an index are not contained in the returned
+     * set and have to be {@link #scan(File, List) scanned}.
+     *
+     * @param packageNames the package names
+     * @return a set of all indexed commands, in index order
+     * @throws NullPointerException if packageNames is null
+     */
+    public static Set<Class<? extends IpcCommand>> indexedIn(List<String> packageNames) {
+        Preconditions.checkNotNull(packageNames, "PackageNames");
+        final ClassLoader loader = loader();
+        final Set<Class<? extends IpcCommand>> indexed = Sets.newLinkedHashSet();
+
+        for (String name : read(loader)) {
+            if (!contains(packageNames, name)) {
+                continue;
+            }
+
+            final Class<? extends IpcCommand> command = load(name, loader);
+            if (command != null) {
+                indexed.add(command);
+            }
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Lists all jars and class folders of the classpath which don't contain an index.
+     *
+     * @return a list of all unindexed classpath roots, in classpath order
+     */
+    public static List<File> unindexedRoots() {
+        final List<File> roots = Lists.newArrayList();
+
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (entry.length() == 0) {
+                continue;
+            }
+            final File root = new File(entry);
+            if (root.exists() && !isIndexed(root)) {
+                roots.add(root);
+            }
+        }
+
+        return roots;
+    }
+
+    private static boolean isIndexed(File root) {
+        if (root.isDirectory()) {
+            return new File(root, LOCATION).isFile();
+        }
+
+        try {
+            final JarFile jar = new JarFile(root);
+            try {
+                return jar.getEntry(LOCATION) != null;
+            } finally {
+                jar.close();
+            }
+        } catch (IOException e) {
+            LOG.debug("{} is no jar", root);
+            // nothing to scan
+            return true;
+        }
+    }
+
+    /**
+     * Scans a single jar or class folder for all commands in the given packages and
+     * their sub packages. This is considerably slower than reading the index.
+     *
+     * @param root the jar or class folder
+     * @param packageNames the package names
+     * @return a set of all commands found
+     * @throws NullPointerException if root or packageNames is null
+     */
+    public static Set<Class<? extends IpcCommand>> scan(File root, List<String> packageNames) {
+        Preconditions.checkNotNull(root, "Root");
+        Preconditions.checkNotNull(packageNames, "PackageNames");
+        LOG.debug("Scanning {} for commands, no index available", root);
+
+        final List<String> names = Lists.newArrayList();
+
+        if (root.isDirectory()) {
+            for (String packageName : packageNames) {
+                final String path = packageName.replace('.', '/');
+                list(new File(root, path), path, names);
+            }
+        } else {
+            try {
+                list(root, packageNames, names);
+            } catch (IOException e) {
+                LOG.warn("Unable to scan " + root + " for commands", e);
+            }
+        }
+
+        final ClassLoader loader = loader();
+        final Set<Class<? extends IpcCommand>> commands = Sets.newLinkedHashSet();
+
+        for (String name : names) {
+            final Class<?> type;
+
+            try {
+                type = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                LOG.debug("{} is not visible", name);
+                continue;
+            } catch (LinkageError e) {
+                LOG.debug("{} can't be loaded: {}", name, e);
+                continue;
+            }
+
+            if (IpcCommand.class.isAssignableFrom(type) && !type.isInterface() &&
+                !Modifier.isAbstract(type.getModifiers())) {
+                commands.add(type.asSubclass(IpcCommand.class));
+            }
+        }
+
+        return commands;
+    }
+
+    private static void list(File directory, String path, List<String> names) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                list(file, path + "/" + file.getName(), names);
+            } else if (file.getName().endsWith(SUFFIX)) {
+                names.add(classNameOf(path + "/" + file.getName()));
+            }
+        }
+    }
+
+    private static void list(File jar, List<String> packageNames, List<String> names) throws IOException {
+        final JarFile file = new JarFile(jar);
+
+        try {
+            final Enumeration<JarEntry> entries = file.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (name.endsWith(SUFFIX)) {
+                    final String className = classNameOf(name);
+                    if (contains(packageNames, className)) {
+                        names.add(className);
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static String classNameOf(String path) {
+        return path.substring(0, path.length() - SUFFIX.length()).replace('/', '.');
+    }
+
+    private static ClassLoader loader() {
+        final ClassLoader context = Thread.currentThread().getContextClassLoader();
+        return context == null ? CommandIndex.class.getClassLoader() : context;
+    }
+
+    private static boolean contains(List<String> packageNames, String className) {
+        for (String packageName : packageNames) {
+            if (className.startsWith(packageName + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> read(ClassLoader loader) {
+        final List<String> names = Lists.newArrayList();
+        final Enumeration<URL> urls;
+
+        try {
+            urls = loader.getResources(LOCATION);
+        } catch (IOException e) {
+            LOG.warn("Unable to list command indexes", e);
+            return names;
+        }
+
+        while (urls.hasMoreElements()) {
+            final URL url = urls.nextElement();
+            try {
+                read(url, names);
+            } catch (IOException e) {
+                LOG.warn("Unable to read command index " + url, e);
+            }
+        }
+
+        return names;
+    }
+
+    private static void read(URL url, List<String> names) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), CHARSET));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String name = line.trim();
+                if (name.length() > 0 && !name.startsWith("#")) {
+                    names.add(name);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Class<? extends IpcCommand> load(String name, ClassLoader loader) {
+        final Class<?> type;
+
+        try {
+            type = Class.forName(name, false, loader);
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Indexed command {} does not exist", name);
+            return null;
+        } catch (LinkageError e) {
+            LOG.warn("Indexed command " + name + " can't be loaded", e);
+            return null;
+        }
+
+        if (IpcCommand.class.isAssignableFrom(type)) {
+            return type.asSubclass(IpcCommand.class);
+        } else {
+            LOG.warn("Indexed class {} is no command", name);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * An annotation processor which writes the names of all concrete
+ * {@code IpcCommand} implementations of a compilation unit to
+ * {@value CommandIndex#LOCATION}, see {@link CommandIndex}.
+ *
+ * <p>
+ *   The processor is registered as a service and therefore runs automatically
+ *   in every project which has palava-util on its compile classpath. Names of
+ *   an existing index are kept if their class still exists, so incremental
+ *   compilations don't lose commands which haven't been recompiled.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+@SupportedAnnotationTypes("*")
+public final class CommandIndexProcessor extends AbstractProcessor {
+
+    private static final String COMMAND = "de.cosmocode.palava.ipc.IpcCommand";
+
+    // not taken from CommandIndex, which would initialize logging inside the compiler
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final Set<String> commands = new TreeSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment environment) {
+        final TypeElement command = processingEnv.getElementUtils().getTypeElement(COMMAND);
+
+        if (command == null) {
+            // not a palava project
+            return false;
+        }
+
+        if (environment.processingOver()) {
+            write();
+        } else {
+            final TypeMirror type = processingEnv.getTypeUtils().erasure(command.asType());
+            for (TypeElement element : ElementFilter.typesIn(environment.getRootElements())) {
+                collect(element, type);
+            }
+        }
+
+        // never claim annotations, other processors may need them
+        return false;
+    }
+
+    private void collect(TypeElement element, TypeMirror command) {
+        final Types types = processingEnv.getTypeUtils();
+
+        if (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.ABSTRACT) &&
+            types.isAssignable(types.erasure(element.asType()), command)) {
+            commands.add(processingEnv.getElementUtils().getBinaryName(element).toString());
+        }
+
+        for (TypeElement nested : ElementFilter.typesIn(element.getEnclosedElements())) {
+            collect(nested, command);
+        }
+    }
+
+    private void write() {
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        try {
+            readExisting();
+            final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                CommandIndex.LOCATION);
+            final Writer writer = new OutputStreamWriter(file.openOutputStream(), CHARSET);
+
+            try {
+                for (String name : commands) {
+                    writer.write(name);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "Unable to write command index: " + e.getMessage());
+        }
+    }
+
+    private void readExisting() throws IOException {
+        final BufferedReader reader;
+
+        try {
+            final FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                CommandIndex.LOCATION);
+            reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), CHARSET));
+        } catch (IOException e) {
+            // no previous index
+            return;
+        } catch (IllegalArgumentException e) {
+            // no previous index
+            return;
+        }
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String name = line.trim();
+                if (name.length() > 0 && !name.startsWith("#") && exists(name)) {
+                    commands.add(name);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private boolean exists(String binaryName) {
+        // nested classes are looked up by canonical name
+        return processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.')) != null;
+    }
+
+}
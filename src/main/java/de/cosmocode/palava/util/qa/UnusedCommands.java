@@ -0,0 +1,47 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.util.Set;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Provides the commands which have not been used since startup.
+ * Bound by the {@link UnusedFilterModule}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public interface UnusedCommands {
+
+    /**
+     * Returns all commands which have not been used yet.
+     *
+     * @return an immutable set of unused commands
+     */
+    Set<Class<? extends IpcCommand>> getUnusedCommands();
+
+    /**
+     * Returns all commands which have been used, but not within the configured
+     * cold age, e.g. 30 days.
+     *
+     * @return an immutable set of cold commands
+     */
+    Set<Class<? extends IpcCommand>> getColdCommands();
+
+}
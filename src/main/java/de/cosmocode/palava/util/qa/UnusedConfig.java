@@ -31,6 +31,12 @@ final class UnusedConfig {
     public static final String PERIOD = PREFIX + "period";
     
     public static final String PERIOD_UNIT = PREFIX + "periodUnit";
+    
+    public static final String HISTORY_FILE = PREFIX + "historyFile";
+    
+    public static final String COLD_AGE = PREFIX + "coldAge";
+    
+    public static final String COLD_AGE_UNIT = PREFIX + "coldAgeUnit";
 
     private UnusedConfig() {
         
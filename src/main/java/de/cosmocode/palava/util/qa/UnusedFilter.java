@@ -16,28 +16,42 @@
 
 package de.cosmocode.palava.util.qa;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
-import de.cosmocode.commons.reflect.Classpath;
-import de.cosmocode.commons.reflect.Packages;
-import de.cosmocode.commons.reflect.Reflection;
 import de.cosmocode.palava.concurrent.Background;
+import de.cosmocode.palava.core.lifecycle.Disposable;
 import de.cosmocode.palava.core.lifecycle.Initializable;
 import de.cosmocode.palava.core.lifecycle.LifecycleException;
 import de.cosmocode.palava.ipc.IpcCall;
@@ -47,53 +61,334 @@ import de.cosmocode.palava.ipc.IpcCommand;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 
 /**
- * A filter which keeps track of all unused commands.
+ * A filter which keeps track of all unused commands. Commands are listed
+ * using the {@link CommandIndex}.
+ *
+ * <p>
+ *   Listing the commands runs in the background once the filter is initialized,
+ *   so a slow classpath scan doesn't delay startup. Jars and class folders without
+ *   an index are scanned in parallel by a few dedicated threads, one task per jar
+ *   or folder, so scanning doesn't occupy the shared background scheduler. If listing
+ *   fails, the commands found so far are tracked. Commands called before the listing
+ *   is complete are buffered and marked as used afterwards. Until then, no command
+ *   is reported as unused.
+ * </p>
+ *
+ * <p>
+ *   Every known command gets a dense id once listed, which indexes the time of its
+ *   last call in a primitive array. Each command owns a cache line of that array, so
+ *   calls of different commands don't contend. The time is read from a {@link CoarseClock}
+ *   which ticks once per second, so the last call time is written at most once per tick
+ *   and command, using a relaxed write. Calls are counted per thread, so counting
+ *   needs no atomic update, and summed up when the history is created.
+ * </p>
+ *
+ * <p>
+ *   Commands which have been called, but not within {@link UnusedConfig#COLD_AGE}
+ *   (30 days by default), are reported as cold.
+ * </p>
+ *
+ * <p>
+ *   If {@link UnusedConfig#HISTORY_FILE} is configured, the call counts of all
+ *   commands are written to that file as a {@link UsageHistory} every period and
+ *   on shutdown. An existing history is loaded when listing commands, so commands
+ *   called before a restart are not reported as unused. The history keeps the node's
+ *   source id across restarts, so merging several of its files counts every call once.
+ *   Histories of several nodes can be combined using the {@link UsageHistoryTool}.
+ * </p>
  *
  * @since 1.2
  * @author Willi Schoenborn
  */
 @Singleton
-final class UnusedFilter implements IpcCallFilter, Initializable, Runnable {
+final class UnusedFilter implements IpcCallFilter, UnusedCommands, Initializable, Disposable, Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(UnusedFilter.class);
 
+    // one cache line per command
+    private static final int STRIDE = 8;
+    
+    // classpath roots scanned in parallel, scanning is mostly I/O bound
+    private static final int MAX_SCANNERS = 4;
+    
+
+    private static final Comparator<Class<?>> BY_NAME = new Comparator<Class<?>>() {
+
+        @Override
+        public int compare(Class<?> left, Class<?> right) {
+            return left.getName().compareTo(right.getName());
+        }
+
+    };
+
     private final Joiner joiner = Joiner.on('\n');
-    private final Set<Class<? extends IpcCommand>> commands;
+    
+    private final List<String> packageNames;
     
     private final ScheduledExecutorService scheduler;
     
+    private final CoarseClock clock = new CoarseClock();
+    
+    // null until all commands have been listed, maps commands to their dense ids
+    private volatile Map<Class<? extends IpcCommand>, Integer> commands;
+    
+    // last call time per id, one cache line each, published together with the commands
+    private AtomicLongArray cells;
+    
+    // calls per thread and id, published together with the commands
+    private Hits hits;
+    
+    // scans unindexed classpath roots, null unless scanning is required
+    private volatile ExecutorService scanners;
+    
+    // commands called before the listing was complete
+    private final ConcurrentMap<Class<? extends IpcCommand>, Boolean> early = Maps.newConcurrentMap();
+    
     private long period = 1L;
     private TimeUnit periodUnit = TimeUnit.MINUTES;
     
+    private long coldAge = 30L;
+    private TimeUnit coldAgeUnit = TimeUnit.DAYS;
+    
+    private File historyFile;
+    
+    // loaded together with the commands, immutable afterwards
+    private Map<String, Long> restored = ImmutableMap.of();
+    private Map<String, Long> restoredLastUsed = ImmutableMap.of();
+    private long since = System.currentTimeMillis();
+    private String source = UUID.randomUUID().toString();
+    
     @Inject
     public UnusedFilter(@Named(UnusedConfig.PACKAGES) List<String> packageNames, 
             @Background ScheduledExecutorService scheduler) {
         
-        final Classpath classpath = Reflection.defaultClasspath();
-        final Packages packages = classpath.restrictTo(packageNames);
-        final Iterable<Class<? extends IpcCommand>> all = packages.subclassesOf(IpcCommand.class);
-        final ConcurrentMap<Class<? extends IpcCommand>, Boolean> map = Maps.newConcurrentMap();
-        
-        for (Class<? extends IpcCommand> type : all) {
-            map.put(type, Boolean.TRUE);
-        }
-        
-        this.commands = Collections.newSetFromMap(map);
+        this.packageNames = ImmutableList.copyOf(packageNames);
         this.scheduler = Preconditions.checkNotNull(scheduler, "Scheduler");
     }
     
+    @Inject(optional = true)
+    void setHistoryFile(@Named(UnusedConfig.HISTORY_FILE) File historyFile) {
+        this.historyFile = Preconditions.checkNotNull(historyFile, "HistoryFile");
+    }
+    
+    @Inject(optional = true)
+    void setColdAge(@Named(UnusedConfig.COLD_AGE) long coldAge) {
+        Preconditions.checkArgument(coldAge > 0L, "ColdAge must be positive");
+        this.coldAge = coldAge;
+    }
+    
+    @Inject(optional = true)
+    void setColdAgeUnit(@Named(UnusedConfig.COLD_AGE_UNIT) TimeUnit coldAgeUnit) {
+        this.coldAgeUnit = Preconditions.checkNotNull(coldAgeUnit, "ColdAgeUnit");
+    }
+    
     @Override
     public void initialize() throws LifecycleException {
+        scheduler.scheduleAtFixedRate(clock, 1L, 1L, TimeUnit.SECONDS);
+        list();
         scheduler.scheduleAtFixedRate(this, period, period, periodUnit);
     }
     
+    /**
+     * Lists all commands in the background.
+     */
+    void list() {
+        scheduler.execute(new Runnable() {
+            
+            @Override
+            public void run() {
+                final Set<Class<? extends IpcCommand>> found = Collections.newSetFromMap(
+                    Maps.<Class<? extends IpcCommand>, Boolean>newConcurrentMap());
+                final List<File> unindexed;
+                
+                try {
+                    found.addAll(CommandIndex.indexedIn(packageNames));
+                    unindexed = CommandIndex.unindexedRoots();
+                } catch (RuntimeException e) {
+                    LOG.warn("Unable to list commands, tracking " + found.size() + " commands found so far", e);
+                    publish(found);
+                    return;
+                }
+                
+                if (unindexed.isEmpty()) {
+                    publish(found);
+                } else {
+                    scan(unindexed, found);
+                }
+            }
+            
+        });
+    }
+    
+    private void scan(List<File> unindexed, final Set<Class<? extends IpcCommand>> found) {
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(unindexed.size(), MAX_SCANNERS), new ScannerThreadFactory());
+        scanners = executor;
+        
+        final AtomicInteger pending = new AtomicInteger(unindexed.size());
+        
+        for (final File root : unindexed) {
+            executor.execute(new Runnable() {
+                
+                @Override
+                public void run() {
+                    try {
+                        found.addAll(CommandIndex.scan(root, packageNames));
+                    } catch (RuntimeException e) {
+                        LOG.warn("Unable to scan " + root + " for commands", e);
+                    } finally {
+                        if (pending.decrementAndGet() == 0) {
+                            publish(found);
+                        }
+                    }
+                }
+                
+            });
+        }
+        
+        // threads terminate once all roots have been scanned
+        executor.shutdown();
+    }
+    
+    /**
+     * Publishes the listed commands and marks all buffered commands as used.
+     *
+     * @param found all listed commands
+     */
+    void publish(Set<Class<? extends IpcCommand>> found) {
+        restore();
+        
+        final List<Class<? extends IpcCommand>> sorted = Lists.newArrayList(found);
+        Collections.sort(sorted, BY_NAME);
+        
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, Integer> builder = ImmutableMap.builder();
+        final AtomicLongArray array = new AtomicLongArray(sorted.size() * STRIDE);
+        
+        for (int id = 0; id < sorted.size(); id++) {
+            final Class<? extends IpcCommand> type = sorted.get(id);
+            builder.put(type, Integer.valueOf(id));
+            final Long lastUsed = restoredLastUsed.get(type.getName());
+            if (lastUsed != null) {
+                array.set(id * STRIDE, lastUsed.longValue());
+            }
+        }
+        
+        final Map<Class<? extends IpcCommand>, Integer> published = builder.build();
+        final Hits counters = new Hits(sorted.size());
+        cells = array;
+        hits = counters;
+        commands = published;
+        
+        // calls which did not see the published map have been buffered before
+        for (Class<? extends IpcCommand> type : early.keySet()) {
+            markUsed(published, array, counters, type);
+        }
+        early.clear();
+        
+        LOG.debug("Tracking usage of {} commands", published.size());
+    }
+    
+    private void restore() {
+        if (historyFile == null || !historyFile.exists()) {
+            return;
+        }
+        
+        try {
+            final UsageHistory history = UsageHistory.read(historyFile);
+            if (history.getSources() != 1) {
+                // restoring would count the calls of all merged sources again
+                LOG.warn("{} contains {} merged histories, starting a new history",
+                    historyFile, history.getSources());
+                return;
+            }
+            source = history.getSourceIds().iterator().next();
+            restored = history.getCounts();
+            restoredLastUsed = history.getLastUsed();
+            since = history.getSince();
+            LOG.info("Restored usage history of {} commands from {}", restored.size(), historyFile);
+        } catch (IOException e) {
+            LOG.warn("Unable to restore usage history from " + historyFile, e);
+        }
+    }
+    
+    /**
+     * Creates a history of all listed commands, including the restored history.
+     *
+     * @return the current history or null if commands are still being listed
+     */
+    UsageHistory history() {
+        final Map<Class<? extends IpcCommand>, Integer> current = commands;
+        
+        if (current == null) {
+            return null;
+        }
+        
+        final AtomicLongArray array = cells;
+        final long[] calls = hits.sum();
+        final Map<String, Long> counts = Maps.newHashMap(restored);
+        final Map<String, Long> lastUsed = Maps.newHashMap(restoredLastUsed);
+        
+        for (Map.Entry<Class<? extends IpcCommand>, Integer> entry : current.entrySet()) {
+            final String name = entry.getKey().getName();
+            final int id = entry.getValue().intValue();
+            final Long count = counts.get(name);
+            counts.put(name, Long.valueOf(count == null ? calls[id] : count.longValue() + calls[id]));
+            // initialized with the restored time, so this is never earlier
+            lastUsed.put(name, Long.valueOf(array.get(id * STRIDE)));
+        }
+        
+        return new UsageHistory(source, since, System.currentTimeMillis(), counts, lastUsed);
+    }
+    
+    private void persist() {
+        final UsageHistory history = history();
+        
+        if (historyFile == null || history == null) {
+            return;
+        }
+        
+        try {
+            history.write(historyFile);
+        } catch (IOException e) {
+            LOG.warn("Unable to write usage history to " + historyFile, e);
+        }
+    }
+    
     @Override
     public void run() {
-        if (commands.isEmpty()) {
+        if (commands == null) {
+            LOG.debug("Commands are still being listed");
+            return;
+        }
+        
+        final Set<Class<? extends IpcCommand>> unused = getUnusedCommands();
+        if (unused.isEmpty()) {
             LOG.info("Congratulations, all commands are currently in use.");
         } else if (LOG.isWarnEnabled()) {
-            LOG.warn("Unused commands:\n{}", joiner.join(commands));
+            LOG.warn("Unused commands:\n{}", joiner.join(unused));
+        }
+        
+        final Map<Class<? extends IpcCommand>, Long> cold = cold();
+        if (!cold.isEmpty() && LOG.isWarnEnabled()) {
+            final List<String> lines = Lists.newArrayListWithCapacity(cold.size());
+            for (Map.Entry<Class<? extends IpcCommand>, Long> entry : cold.entrySet()) {
+                lines.add(String.format("%tF %<tT %s", new Date(entry.getValue().longValue()), entry.getKey()));
+            }
+            LOG.warn("Commands not called in {} {}:\n{}", new Object[] {
+                coldAge, coldAgeUnit.name().toLowerCase(), joiner.join(lines)
+            });
+        }
+        
+        persist();
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        final ExecutorService executor = scanners;
+        if (executor != null) {
+            executor.shutdownNow();
         }
+        persist();
     }
     
     @Override
@@ -101,12 +396,176 @@ final class UnusedFilter implements IpcCallFilter, Initializable, Runnable {
         throws IpcCommandExecutionException {
         
         final Class<? extends IpcCommand> type = command.getClass();
+        final Map<Class<? extends IpcCommand>, Integer> current = commands;
         
-        if (commands.remove(type)) {
-            LOG.trace("{} has been used, removing from set of unused commands", type);
+        if (current != null) {
+            markUsed(current, cells, hits, type);
+        } else if (!early.containsKey(type)) {
+            early.put(type, Boolean.TRUE);
+            
+            // the listing may have been published in the meantime
+            final Map<Class<? extends IpcCommand>, Integer> published = commands;
+            if (published != null) {
+                markUsed(published, cells, hits, type);
+            }
         }
         
         return chain.filter(call, command);
     }
+    
+    private void markUsed(Map<Class<? extends IpcCommand>, Integer> current, AtomicLongArray array,
+        Hits counters, Class<? extends IpcCommand> type) {
+        
+        final Integer id = current.get(type);
+        
+        if (id == null) {
+            return;
+        }
+        
+        counters.increment(id.intValue());
+        
+        final int offset = id.intValue() * STRIDE;
+        final long now = clock.millis();
+        final long lastUsed = array.get(offset);
+        
+        if (lastUsed != now) {
+            // racing threads may write slightly different times, which is harmless
+            array.lazySet(offset, now);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     *   Returns an empty set while commands are still being listed.
+     * </p>
+     */
+    @Override
+    public Set<Class<? extends IpcCommand>> getUnusedCommands() {
+        final Map<Class<? extends IpcCommand>, Integer> current = commands;
+        
+        if (current == null) {
+            return ImmutableSet.of();
+        }
+        
+        final AtomicLongArray array = cells;
+        final ImmutableSet.Builder<Class<? extends IpcCommand>> builder = ImmutableSet.builder();
+        for (Map.Entry<Class<? extends IpcCommand>, Integer> entry : current.entrySet()) {
+            if (array.get(entry.getValue().intValue() * STRIDE) == 0L) {
+                builder.add(entry.getKey());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     *   Returns an empty set while commands are still being listed.
+     * </p>
+     */
+    @Override
+    public Set<Class<? extends IpcCommand>> getColdCommands() {
+        return cold().keySet();
+    }
+    
+    /**
+     * Finds all commands which have been called, but not within the cold age.
+     *
+     * @return an immutable map of cold commands and their last call times, sorted by name
+     */
+    private Map<Class<? extends IpcCommand>, Long> cold() {
+        final Map<Class<? extends IpcCommand>, Integer> current = commands;
+        
+        if (current == null) {
+            return ImmutableMap.of();
+        }
+        
+        final AtomicLongArray array = cells;
+        final long cutoff = clock.millis() - coldAgeUnit.toMillis(coldAge);
+        final ImmutableMap.Builder<Class<? extends IpcCommand>, Long> builder = ImmutableMap.builder();
+        
+        for (Map.Entry<Class<? extends IpcCommand>, Integer> entry : current.entrySet()) {
+            final long lastUsed = array.get(entry.getValue().intValue() * STRIDE);
+            if (lastUsed != 0L && lastUsed < cutoff) {
+                builder.put(entry.getKey(), Long.valueOf(lastUsed));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Call counters per calling thread. Every thread increments its own counters
+     * using a plain read and a relaxed write, which is safe because there is only
+     * a single writer per counter. Summing reads the counters of all threads.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class Hits extends ThreadLocal<AtomicLongArray> {
+        
+        private final int size;
+        
+        // counters of all threads which ever called a command, threads are pooled
+        private final Queue<AtomicLongArray> all = new ConcurrentLinkedQueue<AtomicLongArray>();
+        
+        Hits(int size) {
+            this.size = size;
+        }
+        
+        @Override
+        protected AtomicLongArray initialValue() {
+            final AtomicLongArray counters = new AtomicLongArray(size);
+            all.add(counters);
+            return counters;
+        }
+        
+        /**
+         * Increments the calling thread's counter of the given id.
+         *
+         * @param id the command id
+         */
+        void increment(int id) {
+            final AtomicLongArray counters = get();
+            counters.lazySet(id, counters.get(id) + 1L);
+        }
+        
+        /**
+         * Sums the counters of all threads.
+         *
+         * @return the number of calls per id
+         */
+        long[] sum() {
+            final long[] sum = new long[size];
+            for (AtomicLongArray counters : all) {
+                for (int id = 0; id < size; id++) {
+                    sum[id] += counters.get(id);
+                }
+            }
+            return sum;
+        }
+        
+    }
+
+    /**
+     * Creates the daemon threads scanning unindexed classpath roots.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class ScannerThreadFactory implements ThreadFactory {
+        
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "unused-filter-scanner-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+        
+    }
 
 }
@@ -20,7 +20,7 @@ import de.cosmocode.palava.ipc.Commands;
 import de.cosmocode.palava.ipc.FilterModule;
 
 /**
- * Binds {@link UnusedFilter}.
+ * Binds {@link UnusedFilter} and exposes it as {@link UnusedCommands}.
  *
  * @since 1.2
  * @author Willi Schoenborn
@@ -30,6 +30,7 @@ public final class UnusedFilterModule extends FilterModule {
     @Override
     protected void configure() {
         filter(Commands.any()).through(UnusedFilter.class);
+        bind(UnusedCommands.class).to(UnusedFilter.class);
     }
 
 }
@@ -0,0 +1,372 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable record of how often and when commands have been called, written
+ * periodically by the {@link UnusedFilter} and combined using
+ * {@link #merge(UsageHistory)} or the {@link UsageHistoryTool}.
+ *
+ * <p>
+ *   A history consists of one section per source, usually a node, identified by
+ *   a unique id. A node restores its history after a restart and keeps counting on
+ *   top of it, so each of its files covers everything since the node's first start.
+ *   Merging therefore keeps only the newest section of every source, which allows
+ *   merging files of the same node from several days without counting calls twice.
+ * </p>
+ *
+ * <p>
+ *   Histories are stored as gzip compressed binary files: magic, version, the number
+ *   of sources and per source its id, the covered time span and one entry of class
+ *   name, call count and last call time per command. Commands which have never been
+ *   called are included with a count of zero, so merging histories of several nodes
+ *   tells apart commands which are unused everywhere from commands a node doesn't know.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class UsageHistory {
+
+    static final int MAGIC = 0x50554853;
+
+    static final int VERSION = 1;
+
+    private final SortedMap<String, Section> sections;
+
+    private final long since;
+
+    private final long until;
+
+    private final SortedMap<String, Long> counts;
+
+    private final SortedMap<String, Long> lastUsed;
+
+    UsageHistory(String source, long since, long until, Map<String, Long> counts, Map<String, Long> lastUsed) {
+        this(ImmutableSortedMap.of(Preconditions.checkNotNull(source, "Source"),
+            new Section(since, until, counts, lastUsed)));
+    }
+
+    private UsageHistory(Map<String, Section> sections) {
+        Preconditions.checkArgument(!sections.isEmpty(), "Sections must not be empty");
+        this.sections = ImmutableSortedMap.copyOf(sections);
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        final Map<String, Long> summed = Maps.newHashMap();
+        final Map<String, Long> latest = Maps.newHashMap();
+
+        for (Section section : this.sections.values()) {
+            first = Math.min(first, section.since);
+            last = Math.max(last, section.until);
+
+            for (Map.Entry<String, Long> entry : section.counts.entrySet()) {
+                final Long count = summed.get(entry.getKey());
+                final long sum = count == null ? entry.getValue().longValue() : count.longValue() + entry.getValue();
+                summed.put(entry.getKey(), Long.valueOf(sum));
+            }
+
+            for (Map.Entry<String, Long> entry : section.lastUsed.entrySet()) {
+                final Long time = latest.get(entry.getKey());
+                if (time == null || time.longValue() < entry.getValue().longValue()) {
+                    latest.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        this.since = first;
+        this.until = last;
+        this.counts = ImmutableSortedMap.copyOf(summed);
+        this.lastUsed = ImmutableSortedMap.copyOf(latest);
+    }
+
+    /**
+     * Reads the history stored in the given file.
+     *
+     * @param file the file
+     * @return the history
+     * @throws IOException if reading failed or the file is no usage history
+     */
+    public static UsageHistory read(File file) throws IOException {
+        Preconditions.checkNotNull(file, "File");
+        final DataInputStream input = new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(String.format("%s is no usage history", file));
+            }
+
+            final int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("%s has unsupported version %s", file, version));
+            }
+
+            final int sources = input.readInt();
+            if (sources < 1) {
+                throw new IOException(String.format("%s has no sources", file));
+            }
+
+            final Map<String, Section> sections = Maps.newHashMap();
+
+            for (int i = 0; i < sources; i++) {
+                final String source = input.readUTF();
+                final long since = input.readLong();
+                final long until = input.readLong();
+                final int size = input.readInt();
+                final Map<String, Long> counts = Maps.newHashMap();
+                final Map<String, Long> lastUsed = Maps.newHashMap();
+
+                for (int j = 0; j < size; j++) {
+                    final String name = input.readUTF();
+                    counts.put(name, input.readLong());
+                    lastUsed.put(name, input.readLong());
+                }
+
+                sections.put(source, new Section(since, until, counts, lastUsed));
+            }
+
+            return new UsageHistory(sections);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes this history to the given file. The history is written to a temporary
+     * file first, which then replaces the given file by renaming it, so readers never
+     * see a partially written history.
+     *
+     * @param file the file
+     * @throws IOException if writing failed
+     */
+    public void write(File file) throws IOException {
+        Preconditions.checkNotNull(file, "File");
+        final File temporary = new File(file.getPath() + ".tmp");
+        final DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporary))));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(sections.size());
+
+            for (Map.Entry<String, Section> source : sections.entrySet()) {
+                final Section section = source.getValue();
+                output.writeUTF(source.getKey());
+                output.writeLong(section.since);
+                output.writeLong(section.until);
+                output.writeInt(section.counts.size());
+
+                for (Map.Entry<String, Long> entry : section.counts.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue().longValue());
+                    final Long time = section.lastUsed.get(entry.getKey());
+                    output.writeLong(time == null ? 0L : time.longValue());
+                }
+            }
+        } finally {
+            output.close();
+        }
+
+        // renaming replaces the target atomically on posix systems, others need to delete it first
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            throw new IOException(String.format("Unable to rename %s to %s", temporary, file));
+        }
+    }
+
+    /**
+     * Unions this history with the given one. Sources present in both histories
+     * are taken from the history which covers the later end, because a source's
+     * newer history already contains all calls of its older ones. Counts of the same
+     * command are added across sources and the later call time is kept.
+     *
+     * @param other the other history
+     * @return a new history
+     * @throws NullPointerException if other is null
+     */
+    public UsageHistory merge(UsageHistory other) {
+        Preconditions.checkNotNull(other, "Other");
+        final Map<String, Section> merged = Maps.newHashMap(sections);
+
+        for (Map.Entry<String, Section> entry : other.sections.entrySet()) {
+            final Section section = merged.get(entry.getKey());
+            if (section == null || section.until < entry.getValue().until) {
+                merged.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return new UsageHistory(merged);
+    }
+
+    /**
+     * Returns the start of the covered time span.
+     *
+     * @return the start in milliseconds since epoch
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * Returns the end of the covered time span.
+     *
+     * @return the end in milliseconds since epoch
+     */
+    public long getUntil() {
+        return until;
+    }
+
+    /**
+     * Returns the number of distinct sources merged into this history.
+     *
+     * @return the number of sources, 1 for histories written by a single node
+     */
+    public int getSources() {
+        return sections.size();
+    }
+
+    /**
+     * Returns the ids of all sources merged into this history.
+     *
+     * @return an immutable set of source ids, sorted by id
+     */
+    public Set<String> getSourceIds() {
+        return sections.keySet();
+    }
+
+    /**
+     * Returns the number of calls per command.
+     *
+     * @return an immutable map of command class names and call counts, sorted by name
+     */
+    public SortedMap<String, Long> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Returns the time of the last call per command.
+     *
+     * @return an immutable map of class names and last call times in milliseconds
+     *         since epoch of all commands which have been called, sorted by name
+     */
+    public SortedMap<String, Long> getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Returns the time of the last call of the given command.
+     *
+     * @param name the command class name
+     * @return the last call time in milliseconds since epoch or 0 if the command has never been called
+     */
+    public long getLastUsed(String name) {
+        final Long time = lastUsed.get(name);
+        return time == null ? 0L : time.longValue();
+    }
+
+    /**
+     * Returns all commands which have been called, but not since the given time.
+     *
+     * @param time the time in milliseconds since epoch
+     * @return an immutable set of command class names, sorted by name
+     */
+    public Set<String> getColdSince(long time) {
+        final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        for (Map.Entry<String, Long> entry : lastUsed.entrySet()) {
+            if (entry.getValue().longValue() < time) {
+                builder.add(entry.getKey());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns all commands which have never been called.
+     *
+     * @return an immutable set of command class names, sorted by name
+     */
+    public Set<String> getUnused() {
+        final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            if (entry.getValue().longValue() == 0L) {
+                builder.add(entry.getKey());
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UsageHistory{since=%d, until=%d, sources=%d, commands=%d}",
+            since, until, sections.size(), counts.size());
+    }
+
+    /**
+     * The history of a single source.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class Section {
+
+        private final long since;
+
+        private final long until;
+
+        private final SortedMap<String, Long> counts;
+
+        private final SortedMap<String, Long> lastUsed;
+
+        Section(long since, long until, Map<String, Long> counts, Map<String, Long> lastUsed) {
+            this.since = since;
+            this.until = until;
+            this.counts = ImmutableSortedMap.copyOf(counts);
+
+            final SortedMap<String, Long> called = Maps.newTreeMap();
+            for (Map.Entry<String, Long> entry : this.counts.entrySet()) {
+                if (entry.getValue().longValue() == 0L) {
+                    continue;
+                }
+                final Long time = lastUsed.get(entry.getKey());
+                called.put(entry.getKey(), time == null || time.longValue() == 0L ? Long.valueOf(until) : time);
+            }
+            this.lastUsed = ImmutableSortedMap.copyOf(called);
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Command line tool which unions {@link UsageHistory} files, e.g. of
+ * several nodes and days, and prints a report of unused commands, cold
+ * commands and call counts to standard out.
+ *
+ * <pre>
+ * UsageHistoryTool [--output=file] [--cold=days] &lt;history&gt;...
+ * </pre>
+ *
+ * <p>
+ *   Commands are cold if they have been called, but not within the given
+ *   number of days (30 by default) before the end of the merged history.
+ * </p>
+ *
+ * <p>
+ *   If an output file is given, the merged history is written to it, so
+ *   it can be merged again later.
+ * </p>
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class UsageHistoryTool {
+
+    private static final String USAGE = "Usage: UsageHistoryTool [--output=file] [--cold=days] <history>...";
+
+    private static final long DEFAULT_COLD_DAYS = 30L;
+
+    private static final Comparator<Map.Entry<String, Long>> MOST_CALLED_FIRST =
+        new Comparator<Map.Entry<String, Long>>() {
+
+            @Override
+            public int compare(Map.Entry<String, Long> left, Map.Entry<String, Long> right) {
+                return right.getValue().compareTo(left.getValue());
+            }
+
+        };
+
+    private UsageHistoryTool() {
+
+    }
+
+    /**
+     * Merges histories and prints the report.
+     *
+     * @param args the arguments, see class description
+     * @throws IOException if reading or writing a history failed
+     */
+    public static void main(String[] args) throws IOException {
+        File output = null;
+        long coldDays = DEFAULT_COLD_DAYS;
+        final List<File> inputs = Lists.newArrayList();
+
+        for (String arg : args) {
+            if (arg.startsWith("--output=")) {
+                output = new File(arg.substring("--output=".length()));
+            } else if (arg.startsWith("--cold=")) {
+                coldDays = Long.parseLong(arg.substring("--cold=".length()));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException(String.format("Unknown argument %s. %s", arg, USAGE));
+            } else {
+                inputs.add(new File(arg));
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            System.err.println(USAGE);
+            return;
+        }
+
+        UsageHistory merged = null;
+        for (File input : inputs) {
+            final UsageHistory history = UsageHistory.read(input);
+            merged = merged == null ? history : merged.merge(history);
+        }
+
+        if (output != null) {
+            merged.write(output);
+        }
+
+        System.out.print(report(merged, coldDays));
+    }
+
+    /**
+     * Renders a report of the given history.
+     *
+     * @param history the history
+     * @param coldDays the number of days without calls after which a command is cold
+     * @return the report
+     */
+    static String report(UsageHistory history, long coldDays) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%d histories from %tF %<tT to %tF %<tT%n",
+            history.getSources(), new Date(history.getSince()), new Date(history.getUntil())));
+
+        builder.append(String.format("%nUnused commands (%d):%n", history.getUnused().size()));
+        for (String name : history.getUnused()) {
+            builder.append("  ").append(name).append('\n');
+        }
+
+        final long cutoff = history.getUntil() - TimeUnit.DAYS.toMillis(coldDays);
+        final Set<String> cold = history.getColdSince(cutoff);
+        builder.append(String.format("%nCommands not called in %d days (%d):%n", coldDays, cold.size()));
+        for (String name : cold) {
+            builder.append(String.format("  %tF %<tT %s%n", new Date(history.getLastUsed(name)), name));
+        }
+
+        final List<Map.Entry<String, Long>> entries = Lists.newArrayList(history.getCounts().entrySet());
+        Collections.sort(entries, MOST_CALLED_FIRST);
+
+        builder.append(String.format("%nCalls per command (%d):%n", entries.size()));
+        for (Map.Entry<String, Long> entry : entries) {
+            builder.append(String.format("  %12d %s%n", entry.getValue(), entry.getKey()));
+        }
+
+        return builder.toString();
+    }
+
+}
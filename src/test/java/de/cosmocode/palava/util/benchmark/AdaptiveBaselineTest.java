@@ -0,0 +1,139 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.util.enums.ValuesOf;
+
+/**
+ * Tests {@link AdaptiveBaseline}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class AdaptiveBaselineTest implements UnitProvider<CommandStatistics> {
+
+    private static final long WARMUP = 100L;
+
+    private static final double DRIFT_FACTOR = 2.0;
+
+    // latencies are uniformly distributed between 1 and 10000us, so the p99 is at 9900us
+    private static final long P99 = 9900000L;
+
+    private final Random random = new Random(42L);
+
+    @Override
+    public CommandStatistics unit() {
+        return new BenchmarkStatistics().of(ValuesOf.class);
+    }
+
+    private long next(long max) {
+        return 1000L + (long) (random.nextDouble() * (max - 1000L));
+    }
+
+    private void update(CommandStatistics unit, long nanos) {
+        unit.record(nanos, 1);
+        unit.updateBaseline(nanos, WARMUP, DRIFT_FACTOR);
+    }
+
+    /**
+     * Tests that the baseline is calibrated by the call completing the warmup.
+     */
+    @Test
+    public void warmup() {
+        final CommandStatistics unit = unit();
+        final AdaptiveBaseline baseline = unit.getBaseline();
+
+        for (int i = 1; i < WARMUP; i++) {
+            update(unit, next(10000000L));
+        }
+        Assert.assertFalse(baseline.isCalibrated());
+        Assert.assertEquals(CommandStatistics.NO_THRESHOLD, baseline.limit(2.0));
+
+        update(unit, next(10000000L));
+        Assert.assertTrue(baseline.isCalibrated());
+        Assert.assertEquals(baseline.getEstimate(), baseline.getReference());
+        Assert.assertTrue(baseline.limit(2.0) >= 2 * baseline.getEstimate() - 1);
+    }
+
+    /**
+     * Tests that the estimate converges to the p99 of a stationary distribution,
+     * regardless of a poor calibration.
+     */
+    @Test
+    public void convergesUp() {
+        final CommandStatistics unit = unit();
+        // calibrates to roughly 1ms, an order of magnitude too low
+        for (int i = 0; i <= WARMUP; i++) {
+            update(unit, 1000000L);
+        }
+        Assert.assertTrue(unit.getBaseline().getEstimate() < P99 / 5);
+
+        for (int i = 0; i < 200000; i++) {
+            update(unit, next(10000000L));
+        }
+
+        assertNear(P99, unit.getBaseline().getEstimate());
+    }
+
+    /**
+     * Tests that the estimate follows a distribution which became faster.
+     */
+    @Test
+    public void convergesDown() {
+        final CommandStatistics unit = unit();
+        for (int i = 0; i <= WARMUP; i++) {
+            update(unit, 100000000L);
+        }
+
+        for (int i = 0; i < 400000; i++) {
+            update(unit, next(10000000L));
+        }
+
+        assertNear(P99, unit.getBaseline().getEstimate());
+        Assert.assertEquals(0L, unit.getBaseline().getDriftCount());
+    }
+
+    /**
+     * Tests that a growing estimate is reported as drift and moves the reference.
+     */
+    @Test
+    public void drift() {
+        final CommandStatistics unit = unit();
+        for (int i = 0; i <= WARMUP; i++) {
+            update(unit, next(10000000L));
+        }
+        final long reference = unit.getBaseline().getReference();
+
+        for (int i = 0; i < 200000; i++) {
+            update(unit, next(100000000L));
+        }
+
+        Assert.assertTrue(unit.getBaseline().getDriftCount() > 0L);
+        Assert.assertTrue(unit.getBaseline().getReference() > reference * DRIFT_FACTOR);
+    }
+
+    private void assertNear(long expected, long actual) {
+        Assert.assertTrue(actual + " is not within 10% of " + expected, Math.abs(actual - expected) < expected / 10);
+    }
+
+}
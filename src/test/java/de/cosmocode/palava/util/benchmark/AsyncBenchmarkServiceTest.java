@@ -0,0 +1,170 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.util.enums.ValuesOf;
+
+/**
+ * Tests {@link AsyncBenchmarkService}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class AsyncBenchmarkServiceTest implements UnitProvider<AsyncBenchmarkService> {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<BenchmarkRecord> delivered = Collections.synchronizedList(Lists.<BenchmarkRecord>newArrayList());
+
+    /**
+     * Shuts the scheduler down.
+     */
+    @After
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public AsyncBenchmarkService unit() {
+        final AsyncBenchmarkService unit = new AsyncBenchmarkService(new BenchmarkService() {
+
+            @Override
+            public void log(BenchmarkRecord record) {
+                delivered.add(record);
+            }
+
+        }, scheduler);
+        unit.setCapacity(2);
+        // records are drained manually
+        unit.setPeriod(1L);
+        unit.setPeriodUnit(TimeUnit.HOURS);
+        return unit;
+    }
+
+    private BenchmarkRecord record(Map<String, Object> arguments) {
+        return new BenchmarkRecord(ValuesOf.class, TimeUnit.SECONDS.toNanos(1L), ResourceUsage.UNAVAILABLE,
+            TimingTree.UNAVAILABLE, arguments, Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Tests that records are dropped if the buffer is full and that buffered
+     * records don't see later changes of the call.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void drop() throws LifecycleException {
+        final AsyncBenchmarkService unit = unit();
+        unit.setOverflowPolicy(OverflowPolicy.DROP);
+        unit.initialize();
+
+        final Map<String, Object> arguments = Maps.newHashMap();
+        arguments.put("key", "before");
+
+        for (int i = 0; i < 5; i++) {
+            unit.log(record(arguments));
+        }
+        arguments.put("key", "after");
+
+        Assert.assertEquals(2L, unit.getSubmittedCount());
+        Assert.assertEquals(3L, unit.getDroppedCount());
+        Assert.assertEquals(2, unit.getPendingCount());
+
+        unit.dispose();
+
+        Assert.assertEquals(2L, unit.getDeliveredCount());
+        Assert.assertEquals(2, delivered.size());
+        Assert.assertEquals("before", delivered.get(0).getArguments().get("key"));
+    }
+
+    /**
+     * Tests that records logged before initialization are buffered.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void beforeInitialize() throws LifecycleException {
+        final AsyncBenchmarkService unit = unit();
+        unit.log(record(Collections.<String, Object>emptyMap()));
+        Assert.assertEquals(1, unit.getPendingCount());
+
+        unit.initialize();
+        unit.dispose();
+
+        Assert.assertEquals(1, delivered.size());
+    }
+
+    /**
+     * Tests that the calling thread blocks until the buffer has been drained.
+     *
+     * @throws LifecycleException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void block() throws LifecycleException, InterruptedException {
+        final AsyncBenchmarkService unit = unit();
+        unit.setOverflowPolicy(OverflowPolicy.BLOCK);
+        unit.initialize();
+
+        unit.log(record(Collections.<String, Object>emptyMap()));
+        unit.log(record(Collections.<String, Object>emptyMap()));
+
+        final CountDownLatch logged = new CountDownLatch(1);
+        final Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                unit.log(record(Collections.<String, Object>emptyMap()));
+                logged.countDown();
+            }
+
+        });
+        thread.start();
+
+        Assert.assertFalse(logged.await(100L, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2L, unit.getSubmittedCount());
+
+        unit.run();
+
+        Assert.assertTrue(logged.await(5L, TimeUnit.SECONDS));
+        thread.join();
+        Assert.assertEquals(3L, unit.getSubmittedCount());
+        Assert.assertEquals(0L, unit.getDroppedCount());
+
+        unit.dispose();
+
+        Assert.assertEquals(3, delivered.size());
+    }
+
+}
@@ -0,0 +1,415 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Tests {@link BenchmarkFilter}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class BenchmarkFilterTest implements UnitProvider<BenchmarkFilter> {
+
+    private final BenchmarkStatistics statistics = new BenchmarkStatistics();
+
+    private final List<BenchmarkRecord> logged = Collections.synchronizedList(Lists.<BenchmarkRecord>newArrayList());
+
+    @Override
+    public BenchmarkFilter unit() {
+        final BenchmarkFilter unit = new BenchmarkFilter(new BenchmarkService() {
+
+            @Override
+            public void log(BenchmarkRecord record) {
+                logged.add(record);
+            }
+
+        }, statistics);
+        unit.setJmx(false);
+        return unit;
+    }
+
+    private void call(BenchmarkFilter unit, IpcCommand command, int times)
+        throws LifecycleException, IpcCommandExecutionException {
+
+        unit.initialize();
+        final IpcCall call = SyntheticCalls.of(ImmutableMap.<String, Object>of());
+        final IpcCallFilterChain chain = new InMemoryFilterChain(unit);
+        for (int i = 0; i < times; i++) {
+            chain.filter(call, command);
+        }
+    }
+
+    /**
+     * Tests that all calls are sampled by default.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void sampleAll() throws Exception {
+        call(unit(), new Fast(), 10);
+
+        final CommandStatistics fast = statistics.of(Fast.class);
+        Assert.assertEquals(10L, fast.getSampledCount());
+        Assert.assertEquals(10L, fast.getEstimatedCount());
+        Assert.assertEquals(0L, fast.getSkippedCount());
+        Assert.assertEquals(10L, fast.snapshot().getCount());
+    }
+
+    /**
+     * Tests that probabilistic sampling records about every n-th call and
+     * extrapolates the total count.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void sampleProbabilistic() throws Exception {
+        final BenchmarkFilter unit = unit();
+        unit.setSamplingMode(SamplingMode.PROBABILISTIC);
+        unit.setSampleRate(4);
+        call(unit, new Fast(), 4000);
+
+        final CommandStatistics fast = statistics.of(Fast.class);
+        final long sampled = fast.getSampledCount();
+        Assert.assertTrue("sampled " + sampled, sampled > 700L && sampled < 1300L);
+        Assert.assertEquals(sampled * 4, fast.getEstimatedCount());
+        Assert.assertEquals(sampled, fast.snapshot().getCount());
+    }
+
+    /**
+     * Tests that rate limited sampling records at most the configured number of calls
+     * per second and counts all others as skipped.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void sampleRateLimited() throws Exception {
+        final BenchmarkFilter unit = unit();
+        unit.setSamplingMode(SamplingMode.RATE_LIMITED);
+        unit.setMaxRecordsPerSecond(10);
+        call(unit, new Fast(), 100);
+
+        final CommandStatistics fast = statistics.of(Fast.class);
+        final long sampled = fast.getSampledCount();
+        // the calls may span two seconds
+        Assert.assertTrue("sampled " + sampled, sampled >= 10L && sampled <= 20L);
+        Assert.assertEquals(100L - sampled, fast.getSkippedCount());
+        Assert.assertEquals(100L, fast.getEstimatedCount());
+    }
+
+    /**
+     * Tests that slow calls are reported although they have not been sampled.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void alwaysRecordSlow() throws Exception {
+        final BenchmarkFilter unit = unit();
+        unit.setSamplingMode(SamplingMode.RATE_LIMITED);
+        unit.setMaxRecordsPerSecond(1);
+        unit.setThreshold(0L);
+        call(unit, new Sleeping(), 5);
+
+        final CommandStatistics sleeping = statistics.of(Sleeping.class);
+        final long sampled = sleeping.getSampledCount();
+        Assert.assertEquals(5, logged.size());
+        Assert.assertEquals(5L - sampled, sleeping.getSlowUnsampledCount());
+    }
+
+    /**
+     * Tests that unsampled calls are not measured at all if slow calls don't have to be recorded.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void skipUnsampled() throws Exception {
+        final BenchmarkFilter unit = unit();
+        unit.setSamplingMode(SamplingMode.RATE_LIMITED);
+        unit.setMaxRecordsPerSecond(1);
+        unit.setAlwaysRecordSlow(false);
+        unit.setThreshold(0L);
+        call(unit, new Sleeping(), 5);
+
+        final CommandStatistics sleeping = statistics.of(Sleeping.class);
+        Assert.assertEquals(sleeping.getSampledCount(), logged.size());
+        Assert.assertEquals(0L, sleeping.getSlowUnsampledCount());
+    }
+
+    /**
+     * Tests that a declared threshold is resolved once per command and overrides the configured one.
+     */
+    @Test
+    public void resolveThreshold() {
+        Assert.assertEquals(TimeUnit.HOURS.toNanos(1L), statistics.of(Relaxed.class).getThresholdInNanos());
+        Assert.assertEquals(1L, statistics.of(Strict.class).getThresholdInNanos());
+        Assert.assertEquals(CommandStatistics.NO_THRESHOLD, statistics.of(Sleeping.class).getThresholdInNanos());
+    }
+
+    /**
+     * Tests that calls are reported according to the declared threshold.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void declaredThreshold() throws Exception {
+        final BenchmarkFilter unit = unit();
+        unit.setThreshold(0L);
+        call(unit, new Relaxed(), 3);
+        Assert.assertTrue(logged.isEmpty());
+
+        unit.setThreshold(1L);
+        unit.setThresholdUnit(TimeUnit.HOURS);
+        call(unit, new Strict(), 3);
+        call(unit, new Sleeping(), 3);
+
+        Assert.assertEquals(3, logged.size());
+        for (BenchmarkRecord record : logged) {
+            Assert.assertEquals(Strict.class, record.getCommand());
+            Assert.assertTrue(record.getNanos() >= TimeUnit.MILLISECONDS.toNanos(1L));
+        }
+    }
+
+    /**
+     * Tests that calls exceeding a threshold declared in seconds are reported
+     * with the measured nanoseconds instead of whole seconds.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void subSecond() throws Exception {
+        call(unit(), new Seconds(), 1);
+
+        Assert.assertEquals(1, logged.size());
+        final long nanos = logged.get(0).getNanos();
+        Assert.assertTrue("nanos " + nanos, nanos >= TimeUnit.MILLISECONDS.toNanos(Seconds.MILLIS));
+        Assert.assertTrue("nanos " + nanos, nanos % TimeUnit.SECONDS.toNanos(1L) != 0L);
+    }
+
+    /**
+     * Tests that calls in flight and their peak are tracked on every call.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void inFlight() throws Exception {
+        final BenchmarkFilter unit = unit();
+        unit.initialize();
+
+        final int threads = 4;
+        final Blocking command = new Blocking(threads);
+        final IpcCall call = SyntheticCalls.of(ImmutableMap.<String, Object>of());
+        final IpcCallFilterChain chain = new InMemoryFilterChain(unit);
+        final List<Thread> callers = Lists.newArrayList();
+
+        for (int i = 0; i < threads; i++) {
+            final Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        chain.filter(call, command);
+                    } catch (IpcCommandExecutionException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+            });
+            thread.start();
+            callers.add(thread);
+        }
+
+        Assert.assertTrue(command.entered.await(5L, TimeUnit.SECONDS));
+        final CommandStatistics blocking = statistics.of(Blocking.class);
+        Assert.assertEquals(threads, blocking.getInFlight());
+        Assert.assertEquals(threads, blocking.getPeakInFlight());
+
+        command.release.countDown();
+        for (Thread thread : callers) {
+            thread.join();
+        }
+
+        Assert.assertEquals(0L, blocking.getInFlight());
+        Assert.assertEquals(threads, blocking.getPeakInFlight());
+        Assert.assertEquals(threads, blocking.getSampledCount());
+    }
+
+    /**
+     * Tests that the time of sampled calls is split into execution and downstream
+     * time if the {@link ExecutionTimeFilter} is installed.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void split() throws Exception {
+        final BenchmarkFilter unit = unit();
+        unit.initialize();
+
+        final IpcCallFilterChain chain = new InMemoryFilterChain(unit, new ExecutionTimeFilter());
+        for (int i = 0; i < 3; i++) {
+            chain.filter(SyntheticCalls.of(ImmutableMap.<String, Object>of()), new Sleeping());
+        }
+
+        final CommandStatistics sleeping = statistics.of(Sleeping.class);
+        Assert.assertEquals(3L, sleeping.getSplitCount());
+        Assert.assertTrue(sleeping.getExecuteTime() >= TimeUnit.MILLISECONDS.toNanos(3L));
+        Assert.assertTrue(sleeping.getDownstreamTime() >= 0L);
+        Assert.assertEquals(sleeping.snapshot().getSum(), sleeping.getExecuteTime() + sleeping.getDownstreamTime());
+    }
+
+    /**
+     * Tests that calls are not split without the {@link ExecutionTimeFilter}.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void noSplit() throws Exception {
+        call(unit(), new Fast(), 3);
+
+        final CommandStatistics fast = statistics.of(Fast.class);
+        Assert.assertEquals(0L, fast.getSplitCount());
+        Assert.assertEquals(0L, fast.getExecuteTime());
+        Assert.assertEquals(0L, fast.getDownstreamTime());
+    }
+
+    /**
+     * A command which does nothing.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    static final class Fast implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+
+        }
+
+    }
+
+    /**
+     * A command which blocks until released, once all expected calls are running.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    static final class Blocking implements IpcCommand {
+
+        private final CountDownLatch entered;
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        Blocking(int calls) {
+            this.entered = new CountDownLatch(calls);
+        }
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IpcCommandExecutionException(e);
+            }
+        }
+
+    }
+
+    /**
+     * A command which takes at least one millisecond.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    static class Sleeping implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+            try {
+                Thread.sleep(1L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IpcCommandExecutionException(e);
+            }
+        }
+
+    }
+
+    /**
+     * A slow command which declares a threshold of one hour.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    @Threshold(value = 1L, unit = TimeUnit.HOURS)
+    static final class Relaxed extends Sleeping {
+
+    }
+
+    /**
+     * A command which takes more than its declared threshold of one second.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    @Threshold(value = 1L, unit = TimeUnit.SECONDS)
+    static final class Seconds implements IpcCommand {
+
+        static final long MILLIS = 1100L;
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+            try {
+                Thread.sleep(MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IpcCommandExecutionException(e);
+            }
+        }
+
+    }
+
+    /**
+     * A slow command which declares a threshold of one nanosecond.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    @Threshold(value = 1L, unit = TimeUnit.NANOSECONDS)
+    static final class Strict extends Sleeping {
+
+    }
+
+}
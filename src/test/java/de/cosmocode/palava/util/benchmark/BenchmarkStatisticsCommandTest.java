@@ -0,0 +1,160 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.util.benchmark.BenchmarkFilterTest.Fast;
+import de.cosmocode.palava.util.benchmark.BenchmarkFilterTest.Relaxed;
+import de.cosmocode.palava.util.benchmark.BenchmarkFilterTest.Sleeping;
+import de.cosmocode.palava.util.benchmark.BenchmarkFilterTest.Strict;
+
+/**
+ * Tests {@link BenchmarkStatisticsCommand}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class BenchmarkStatisticsCommandTest implements UnitProvider<BenchmarkStatisticsCommand> {
+
+    private final BenchmarkStatistics statistics = new BenchmarkStatistics();
+
+    @Override
+    public BenchmarkStatisticsCommand unit() {
+        statistics.of(Fast.class).record(1000L, 1);
+        statistics.of(Relaxed.class).record(2000L, 1);
+        statistics.of(Sleeping.class).record(3000L, 1);
+        statistics.of(Strict.class).record(4000L, 1);
+        return new BenchmarkStatisticsCommand(statistics);
+    }
+
+    private Map<String, Object> execute(Map<String, ?> arguments) throws IpcCommandExecutionException {
+        final Map<String, Object> result = Maps.newHashMap();
+        unit().execute(SyntheticCalls.of(arguments), result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> commands(Map<String, Object> result) {
+        return (List<Map<String, Object>>) result.get(BenchmarkStatisticsCommand.COMMANDS);
+    }
+
+    /**
+     * Tests that commands are ordered by name and paged.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void page() throws IpcCommandExecutionException {
+        final Map<String, Object> result = execute(ImmutableMap.of(
+            BenchmarkStatisticsCommand.OFFSET, 1,
+            BenchmarkStatisticsCommand.LIMIT, "2"));
+
+        Assert.assertEquals(4, result.get(BenchmarkStatisticsCommand.TOTAL));
+        final List<Map<String, Object>> commands = commands(result);
+        Assert.assertEquals(2, commands.size());
+        Assert.assertEquals(Relaxed.class.getName(), commands.get(0).get("name"));
+        Assert.assertEquals(Sleeping.class.getName(), commands.get(1).get("name"));
+        Assert.assertEquals(3000L, commands.get(1).get("max"));
+    }
+
+    /**
+     * Tests that only commands matching the prefix are returned.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void prefix() throws IpcCommandExecutionException {
+        final Map<String, Object> result = execute(ImmutableMap.of(
+            BenchmarkStatisticsCommand.PREFIX, Strict.class.getName()));
+
+        Assert.assertEquals(1, result.get(BenchmarkStatisticsCommand.TOTAL));
+        Assert.assertEquals(Strict.class.getName(), commands(result).get(0).get("name"));
+    }
+
+    /**
+     * Tests that a malformed limit is rejected.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedLimit() throws IpcCommandExecutionException {
+        execute(ImmutableMap.of(BenchmarkStatisticsCommand.LIMIT, "ten"));
+    }
+
+    /**
+     * Tests that a malformed offset is rejected.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedOffset() throws IpcCommandExecutionException {
+        execute(ImmutableMap.of(BenchmarkStatisticsCommand.OFFSET, "1.5"));
+    }
+
+    /**
+     * Tests that a fractional number is rejected instead of being truncated.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void fractionalLimit() throws IpcCommandExecutionException {
+        execute(ImmutableMap.of(BenchmarkStatisticsCommand.LIMIT, 1.9));
+    }
+
+    /**
+     * Tests that a number beyond the int range is rejected instead of being narrowed.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void offsetOutOfRange() throws IpcCommandExecutionException {
+        execute(ImmutableMap.of(BenchmarkStatisticsCommand.OFFSET, Integer.MAX_VALUE + 1L));
+    }
+
+    /**
+     * Tests that integral numbers of any type are accepted.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void integralNumbers() throws IpcCommandExecutionException {
+        final Map<String, Object> result = execute(
+            ImmutableMap.of(BenchmarkStatisticsCommand.LIMIT, 2L, BenchmarkStatisticsCommand.OFFSET, 1.0));
+        Assert.assertTrue(commands(result).size() <= 2);
+    }
+
+    /**
+     * Tests that limits above the maximum are rejected.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void limitTooHigh() throws IpcCommandExecutionException {
+        execute(ImmutableMap.of(BenchmarkStatisticsCommand.LIMIT, BenchmarkStatisticsCommand.MAX_LIMIT + 1));
+    }
+
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.util.enums.ValuesOf;
+
+/**
+ * Tests persisting and restoring {@link BenchmarkStatistics}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class BenchmarkStatisticsTest implements UnitProvider<BenchmarkStatistics> {
+
+    private File file;
+
+    /**
+     * Creates a fresh state file.
+     *
+     * @throws IOException if the file could not be created
+     */
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("benchmark", ".state");
+        Assert.assertTrue(file.delete());
+    }
+
+    /**
+     * Deletes the state file.
+     */
+    @After
+    public void deleteFile() {
+        if (file.exists()) {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Override
+    public BenchmarkStatistics unit() {
+        return new BenchmarkStatistics();
+    }
+
+    /**
+     * Tests that restored statistics are merged with existing ones.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final BenchmarkStatistics persisted = unit();
+        persisted.of(ValuesOf.class).record(1000L, 1);
+        persisted.of(ValuesOf.class).record(3000L, 2);
+        persisted.persist(file);
+
+        final BenchmarkStatistics unit = unit();
+        unit.of(ValuesOf.class).record(500L, 1);
+        unit.restore(file);
+
+        final CommandStatistics statistics = unit.of(ValuesOf.class);
+        Assert.assertEquals(3L, statistics.getSampledCount());
+        Assert.assertEquals(4L, statistics.getEstimatedCount());
+
+        final HistogramSnapshot snapshot = statistics.snapshot();
+        Assert.assertEquals(3L, snapshot.getCount());
+        Assert.assertEquals(4500L, snapshot.getSum());
+        Assert.assertEquals(500L, snapshot.getMin());
+        Assert.assertEquals(3000L, snapshot.getMax());
+    }
+
+    /**
+     * Tests that persisting replaces an existing file.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void replace() throws IOException {
+        final BenchmarkStatistics persisted = unit();
+        persisted.of(ValuesOf.class).record(1000L, 1);
+        persisted.persist(file);
+        persisted.of(ValuesOf.class).record(2000L, 1);
+        persisted.persist(file);
+
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        final BenchmarkStatistics unit = unit();
+        unit.restore(file);
+        Assert.assertEquals(2L, unit.of(ValuesOf.class).getSampledCount());
+    }
+
+    /**
+     * Tests that resetting clears counters together with the histogram.
+     */
+    @Test
+    public void reset() {
+        final BenchmarkStatistics unit = unit();
+        final CommandStatistics statistics = unit.of(ValuesOf.class);
+        statistics.enter();
+        statistics.record(1000L, 4);
+        statistics.recordUsage(10L, 20L);
+        statistics.recordSplit(600L, 400L);
+        statistics.recordSlowUnsampled();
+        statistics.exit();
+
+        unit.reset();
+
+        Assert.assertEquals(0L, statistics.getSampledCount());
+        Assert.assertEquals(0L, statistics.getEstimatedCount());
+        Assert.assertEquals(0L, statistics.getSlowUnsampledCount());
+        Assert.assertEquals(0L, statistics.getMeasuredCount());
+        Assert.assertEquals(0L, statistics.getCpuTime());
+        Assert.assertEquals(0L, statistics.getAllocatedBytes());
+        Assert.assertEquals(0L, statistics.getSplitCount());
+        Assert.assertEquals(0L, statistics.getExecuteTime());
+        Assert.assertEquals(0L, statistics.getPeakInFlight());
+        Assert.assertEquals(0L, statistics.snapshot().getCount());
+    }
+
+    /**
+     * Tests that split times are kept in the aggregate store and therefore off-heap
+     * if configured.
+     */
+    @Test
+    public void offHeapSplit() {
+        final BenchmarkStatistics unit = unit();
+        unit.setAggregateStorage(AggregateStorage.OFF_HEAP);
+        final CommandStatistics statistics = unit.of(ValuesOf.class);
+        statistics.recordSplit(600L, 400L);
+        statistics.recordSplit(60L, 40L);
+
+        Assert.assertEquals(2L, statistics.getSplitCount());
+        Assert.assertEquals(660L, statistics.getExecuteTime());
+        Assert.assertEquals(440L, statistics.getDownstreamTime());
+        Assert.assertTrue(unit.getFootprint() > 0L);
+    }
+
+    /**
+     * Tests that the footprint includes the split times besides the histogram
+     * and grows by a window slot once the command is called.
+     */
+    @Test
+    public void footprint() {
+        final BenchmarkStatistics unit = unit();
+        final CommandStatistics statistics = unit.of(ValuesOf.class);
+        final long created = unit.getFootprint();
+        Assert.assertTrue(created > LatencyHistogram.CELLS * 8L + 3 * 8L);
+
+        statistics.record(1000L, 1);
+        Assert.assertTrue(unit.getFootprint() > created + LatencyHistogram.LENGTH * 8L);
+    }
+
+    /**
+     * Tests that taking a snapshot of an unknown command doesn't register it.
+     */
+    @Test
+    public void snapshotUnknown() {
+        final BenchmarkStatistics unit = unit();
+        Assert.assertEquals(0L, unit.snapshot(ValuesOf.class).getCount());
+        Assert.assertTrue(unit.getCommands().isEmpty());
+    }
+
+    /**
+     * Tests that concurrent callers of an unknown command share the same statistics.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void concurrentCreation() throws InterruptedException {
+        final BenchmarkStatistics unit = unit();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CommandStatistics[] created = new CommandStatistics[8];
+        final Thread[] threads = new Thread[created.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    created[index] = unit.of(ValuesOf.class);
+                }
+
+            });
+            threads[i].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (CommandStatistics statistics : created) {
+            Assert.assertSame(unit.getCommands().get(ValuesOf.class), statistics);
+        }
+    }
+
+    /**
+     * Tests that files of other versions are ignored.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void unsupportedVersion() throws IOException {
+        final DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+            output.writeInt(BenchmarkStatistics.MAGIC);
+            output.writeInt(BenchmarkStatistics.VERSION + 1);
+        } finally {
+            output.close();
+        }
+
+        final BenchmarkStatistics unit = unit();
+        unit.restore(file);
+        Assert.assertTrue(unit.getCommands().isEmpty());
+    }
+
+}
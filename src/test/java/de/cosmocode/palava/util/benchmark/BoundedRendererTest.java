@@ -0,0 +1,71 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests {@link BoundedRenderer}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class BoundedRendererTest {
+
+    private String render(Object value, int maxLength, int maxDepth) {
+        final StringBuilder builder = new StringBuilder();
+        BoundedRenderer.render(builder, value, maxLength, maxDepth);
+        return builder.toString();
+    }
+
+    /**
+     * Tests rendering of small values.
+     */
+    @Test
+    public void small() {
+        final Map<String, Object> value = ImmutableMap.<String, Object>of("id", 5, "tags", Arrays.asList("a", "b"));
+        Assert.assertEquals("{id=5, tags=[a, b]}", render(value, 100, 3));
+        Assert.assertEquals("null", render(null, 100, 3));
+    }
+
+    /**
+     * Tests that values exceeding the maximum length are truncated.
+     */
+    @Test
+    public void length() {
+        final Map<String, Object> value = ImmutableMap.<String, Object>of("text", "abcdefghijklmnopqrstuvwxyz");
+        Assert.assertEquals("{text=abcd" + BoundedRenderer.TRUNCATED, render(value, 10, 3));
+    }
+
+    /**
+     * Tests that values exceeding the maximum depth are abbreviated.
+     */
+    @Test
+    public void depth() {
+        final Object value = Collections.singletonMap("a", Collections.singletonMap("b", new Object[] {1}));
+        Assert.assertEquals("{a={b=[...]}}", render(value, 100, 2));
+        Assert.assertEquals("{a={b=[1]}}", render(value, 100, 3));
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.util.enums.ValuesOf;
+
+/**
+ * Tests {@link CompositeBenchmarkService}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CompositeBenchmarkServiceTest implements UnitProvider<CompositeBenchmarkService> {
+
+    private final List<BenchmarkRecord> first = Collections.synchronizedList(Lists.<BenchmarkRecord>newArrayList());
+
+    private final List<BenchmarkRecord> second = Collections.synchronizedList(Lists.<BenchmarkRecord>newArrayList());
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public CompositeBenchmarkService unit() {
+        return unit(new Collecting(first), new Collecting(second));
+    }
+
+    private CompositeBenchmarkService unit(BenchmarkService... sinks) {
+        final CompositeBenchmarkService unit = new CompositeBenchmarkService(ImmutableSet.copyOf(sinks));
+        unit.setCapacity(4);
+        unit.setPeriod(1L);
+        unit.setPeriodUnit(TimeUnit.MILLISECONDS);
+        return unit;
+    }
+
+    private BenchmarkRecord record() {
+        return new BenchmarkRecord(ValuesOf.class, TimeUnit.SECONDS.toNanos(1L), ResourceUsage.UNAVAILABLE,
+            TimingTree.UNAVAILABLE, Collections.<String, Object>emptyMap(), Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Tests that every record reaches all sinks.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void fanOut() throws LifecycleException {
+        final CompositeBenchmarkService unit = unit();
+        unit.initialize();
+
+        for (int i = 0; i < 3; i++) {
+            unit.log(record());
+        }
+
+        unit.dispose();
+
+        Assert.assertEquals(3, first.size());
+        Assert.assertEquals(3, second.size());
+        Assert.assertSame(first.get(0), second.get(0));
+    }
+
+    /**
+     * Tests that a failing sink doesn't affect the delivery to the other sinks.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void failingSink() throws LifecycleException {
+        final CompositeBenchmarkService unit = unit(new Collecting(first), new BenchmarkService() {
+
+            @Override
+            public void log(BenchmarkRecord record) {
+                throw new IllegalStateException();
+            }
+
+        });
+        unit.initialize();
+
+        unit.log(record());
+        unit.log(record());
+
+        unit.dispose();
+
+        Assert.assertEquals(2, first.size());
+        Assert.assertEquals(2L, unit.getQueues().get(0).getDeliveredCount());
+        Assert.assertEquals(2L, unit.getQueues().get(1).getFailedCount());
+    }
+
+    /**
+     * Tests that a blocked sink neither delays the caller nor the other sinks
+     * and only loses the records exceeding its own buffer.
+     *
+     * @throws LifecycleException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void blockedSink() throws LifecycleException, InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CompositeBenchmarkService unit = unit(new Collecting(first), new BenchmarkService() {
+
+            @Override
+            public void log(BenchmarkRecord record) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                second.add(record);
+            }
+
+        });
+        unit.initialize();
+
+        unit.log(record());
+        Assert.assertTrue(entered.await(5L, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++) {
+            unit.log(record());
+            awaitDelivery(unit.getQueues().get(0), i + 2);
+        }
+
+        Assert.assertEquals(11, first.size());
+        Assert.assertEquals(4, unit.getQueues().get(1).getPendingCount());
+        Assert.assertEquals(6L, unit.getQueues().get(1).getDroppedCount());
+
+        release.countDown();
+        unit.dispose();
+
+        Assert.assertEquals(5, second.size());
+    }
+
+    private void awaitDelivery(AsyncBenchmarkService queue, long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (queue.getDeliveredCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+    }
+
+    /**
+     * A sink which collects all records.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    private static final class Collecting implements BenchmarkService {
+
+        private final List<BenchmarkRecord> records;
+
+        Collecting(List<BenchmarkRecord> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void log(BenchmarkRecord record) {
+            records.add(record);
+        }
+
+    }
+
+}
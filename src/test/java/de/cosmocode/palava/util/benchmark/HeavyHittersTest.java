@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+
+/**
+ * Tests {@link HeavyHitters}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class HeavyHittersTest implements UnitProvider<HeavyHitters> {
+
+    @Override
+    public HeavyHitters unit() {
+        return new HeavyHitters(new String[] {"tenant"}, 3);
+    }
+
+    private IpcCall call(String tenant) {
+        final IpcCall call = EasyMock.createMock("call", IpcCall.class);
+        final IpcArguments arguments = EasyMock.createMock("arguments", IpcArguments.class);
+        EasyMock.expect(arguments.get("tenant")).andReturn(tenant).anyTimes();
+        EasyMock.expect(call.getArguments()).andReturn(arguments).anyTimes();
+        EasyMock.replay(call, arguments);
+        return call;
+    }
+
+    /**
+     * Tests that a dominating value is reported first, even if
+     * it is hidden between many distinct values.
+     */
+    @Test
+    public void dominating() {
+        final HeavyHitters unit = unit();
+        for (int i = 0; i < 1000; i++) {
+            unit.offer(call("tenant-" + i));
+            if (i % 4 == 0) {
+                unit.offer(call("huge"));
+            }
+        }
+
+        final List<HeavyHitter> hitters = unit.getHitters();
+        Assert.assertEquals(3, hitters.size());
+        Assert.assertEquals("tenant", hitters.get(0).getArgument());
+        Assert.assertEquals("huge", hitters.get(0).getValue());
+        Assert.assertTrue(hitters.get(0).getCount() >= 250L);
+        Assert.assertEquals(1250L, unit.getTotal());
+    }
+
+    /**
+     * Tests that calls without tracked arguments are ignored.
+     */
+    @Test
+    public void missing() {
+        final HeavyHitters unit = unit();
+        unit.offer(call(null));
+        Assert.assertTrue(unit.getHitters().isEmpty());
+        Assert.assertEquals(0L, unit.getTotal());
+    }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.util.enums.ValuesOf;
+
+/**
+ * Tests {@link JournalBenchmarkService} and {@link JournalReader}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class JournalBenchmarkServiceTest implements UnitProvider<JournalBenchmarkService> {
+
+    private static final int RECORDS_PER_FILE = 4;
+
+    private File directory;
+
+    /**
+     * Creates a fresh journal directory.
+     *
+     * @throws IOException if the directory could not be created
+     */
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("journal", "");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdir());
+    }
+
+    /**
+     * Deletes the journal directory.
+     */
+    @After
+    public void deleteDirectory() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Assert.assertTrue(file.delete());
+            }
+        }
+        Assert.assertTrue(directory.delete());
+    }
+
+    @Override
+    public JournalBenchmarkService unit() {
+        final JournalBenchmarkService unit = new JournalBenchmarkService(directory);
+        unit.setFileSize(JournalFormat.HEADER_SIZE + RECORDS_PER_FILE * JournalFormat.RECORD_SIZE);
+        unit.setFiles(2);
+        return unit;
+    }
+
+    private Map<String, Object> arguments(int size) {
+        final Map<String, Object> arguments = Maps.newHashMap();
+        for (int i = 0; i < size; i++) {
+            arguments.put("argument" + i, i);
+        }
+        return arguments;
+    }
+
+    /**
+     * Tests writing and reading a journal.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void roundTrip() throws LifecycleException {
+        final JournalBenchmarkService unit = unit();
+        unit.initialize();
+
+        final Map<String, Object> result = ImmutableMap.<String, Object>of("values", "...");
+        unit.log(new BenchmarkRecord(ValuesOf.class, TimeUnit.MILLISECONDS.toNanos(250L),
+            new ResourceUsage(1000L, 2048L), TimingTree.UNAVAILABLE, arguments(1), result));
+        unit.log(new BenchmarkRecord(ValuesOf.class, TimeUnit.SECONDS.toNanos(3L), ResourceUsage.UNAVAILABLE,
+            TimingTree.UNAVAILABLE, arguments(2), Collections.<String, Object>emptyMap()));
+        unit.dispose();
+
+        final List<JournalRecord> records = Lists.newArrayList(new JournalReader(directory));
+        Assert.assertEquals(2, records.size());
+
+        final JournalRecord first = records.get(0);
+        Assert.assertEquals(ValuesOf.class.getName(), first.getCommand());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(250L), first.getDuration());
+        Assert.assertEquals(1, first.getArgumentCount());
+        Assert.assertEquals(1, first.getResultSize());
+        Assert.assertEquals(1000L, first.getCpuTime());
+        Assert.assertEquals(2048L, first.getAllocatedBytes());
+
+        final JournalRecord second = records.get(1);
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(3L), second.getDuration());
+        Assert.assertEquals(2, second.getArgumentCount());
+        Assert.assertEquals(0, second.getResultSize());
+        Assert.assertEquals(ResourceUsage.UNKNOWN, second.getCpuTime());
+    }
+
+    /**
+     * Tests that durations are written with the measured nanosecond precision.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void exactDuration() throws LifecycleException {
+        final long nanos = 5912345678L;
+        final JournalBenchmarkService unit = unit();
+        unit.initialize();
+        unit.log(new BenchmarkRecord(ValuesOf.class, nanos, ResourceUsage.UNAVAILABLE,
+            TimingTree.UNAVAILABLE, arguments(0), Collections.<String, Object>emptyMap()));
+        unit.dispose();
+
+        final List<JournalRecord> records = Lists.newArrayList(new JournalReader(directory));
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(nanos, records.get(0).getDuration());
+    }
+
+    /**
+     * Tests that old files are deleted when rotating.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void rotate() throws LifecycleException {
+        final JournalBenchmarkService unit = unit();
+        unit.initialize();
+
+        final int total = RECORDS_PER_FILE * 3;
+        for (int i = 0; i < total; i++) {
+            unit.log(new BenchmarkRecord(ValuesOf.class, i, ResourceUsage.UNAVAILABLE,
+                TimingTree.UNAVAILABLE, arguments(0), Collections.<String, Object>emptyMap()));
+        }
+        unit.dispose();
+
+        // the file mapped ahead of time has been removed, because it was never used
+        Assert.assertEquals(2, JournalFormat.dataFiles(directory).length);
+
+        final List<JournalRecord> records = Lists.newArrayList(new JournalReader(directory));
+        Assert.assertEquals(RECORDS_PER_FILE * 2, records.size());
+        Assert.assertEquals(RECORDS_PER_FILE, records.get(0).getDuration());
+        Assert.assertEquals(total - 1, records.get(records.size() - 1).getDuration());
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.junit.UnitProvider;
+
+/**
+ * Tests {@link LatencyHistogram}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class LatencyHistogramTest implements UnitProvider<LatencyHistogram> {
+
+    @Override
+    public LatencyHistogram unit() {
+        return new LatencyHistogram();
+    }
+
+    /**
+     * Tests that every value lies within the bounds of its bucket.
+     */
+    @Test
+    public void bounds() {
+        for (long value = 0L; value < 1L << 20; value += 7L) {
+            final int index = LatencyHistogram.indexOf(value);
+            Assert.assertTrue(LatencyHistogram.lowerBoundOf(index) <= value);
+            Assert.assertTrue(LatencyHistogram.upperBoundOf(index) >= value);
+        }
+        Assert.assertEquals(LatencyHistogram.LENGTH - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    /**
+     * Tests {@link HistogramSnapshot#getPercentile(double)} on a uniform distribution.
+     */
+    @Test
+    public void percentiles() {
+        final LatencyHistogram unit = unit();
+        for (long i = 1L; i <= 10000L; i++) {
+            unit.record(i * 1000L);
+        }
+        final HistogramSnapshot snapshot = unit.snapshot();
+        Assert.assertEquals(10000L, snapshot.getCount());
+        Assert.assertEquals(1000L, snapshot.getMin());
+        Assert.assertEquals(10000000L, snapshot.getMax());
+        Assert.assertEquals(5000000.0, snapshot.getPercentile(50.0), 5000000.0 * 0.07);
+        Assert.assertEquals(9900000.0, snapshot.getPercentile(99.0), 9900000.0 * 0.07);
+        Assert.assertEquals(10000000L, snapshot.getPercentile(100.0));
+        Assert.assertEquals(5000500.0, snapshot.getMean(), 0.001);
+    }
+
+    /**
+     * Tests an empty histogram.
+     */
+    @Test
+    public void empty() {
+        final HistogramSnapshot snapshot = unit().snapshot();
+        Assert.assertEquals(0L, snapshot.getCount());
+        Assert.assertEquals(0L, snapshot.getMin());
+        Assert.assertEquals(0L, snapshot.getMax());
+        Assert.assertEquals(0L, snapshot.getPercentile(99.0));
+    }
+
+    /**
+     * Tests {@link LatencyHistogram#snapshotAndReset()}.
+     */
+    @Test
+    public void snapshotAndReset() {
+        final LatencyHistogram unit = unit();
+        unit.record(42L);
+        unit.record(-1L);
+        final HistogramSnapshot snapshot = unit.snapshotAndReset();
+        Assert.assertEquals(2L, snapshot.getCount());
+        Assert.assertEquals(0L, snapshot.getMin());
+        Assert.assertEquals(42L, snapshot.getMax());
+        Assert.assertEquals(0L, unit.snapshot().getCount());
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link LogBenchmarkService}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class LogBenchmarkServiceTest {
+
+    private String duration(long nanos) {
+        final StringBuilder builder = new StringBuilder();
+        LogBenchmarkService.appendDuration(builder, nanos);
+        return builder.toString();
+    }
+
+    /**
+     * Tests that durations are rendered in the largest fitting unit without losing precision.
+     */
+    @Test
+    public void duration() {
+        Assert.assertEquals("5.912 seconds", duration(TimeUnit.MILLISECONDS.toNanos(5912L)));
+        Assert.assertEquals("3600.000 seconds", duration(TimeUnit.HOURS.toNanos(1L)));
+        Assert.assertEquals("250.005 milliseconds", duration(TimeUnit.MICROSECONDS.toNanos(250005L)));
+        Assert.assertEquals("1.050 microseconds", duration(1050L));
+        Assert.assertEquals("999 nanoseconds", duration(999L));
+    }
+
+}
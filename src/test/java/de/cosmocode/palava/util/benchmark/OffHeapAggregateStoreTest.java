@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link OffHeapAggregateStore}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class OffHeapAggregateStoreTest {
+
+    /**
+     * Tests the atomic operations of allocated cells.
+     */
+    @Test
+    public void cells() {
+        final AggregateStore unit = OffHeapAggregateStore.create();
+        final AtomicLongCells cells = unit.allocate(4);
+
+        Assert.assertEquals(4, cells.length());
+        Assert.assertEquals(0L, cells.get(3));
+        cells.add(3, 5L);
+        cells.add(3, 2L);
+        Assert.assertEquals(7L, cells.get(3));
+        Assert.assertEquals(7L, cells.getAndSet(3, 1L));
+        Assert.assertFalse(cells.compareAndSet(3, 7L, 2L));
+        Assert.assertTrue(cells.compareAndSet(3, 1L, 2L));
+        Assert.assertEquals(2L, cells.get(3));
+        Assert.assertEquals(0L, cells.get(2));
+    }
+
+    /**
+     * Tests that allocations spanning several chunks don't overlap.
+     */
+    @Test
+    public void chunks() {
+        final AggregateStore unit = OffHeapAggregateStore.create();
+        final int length = OffHeapAggregateStore.CHUNK_SIZE / 8 / 3;
+        final AtomicLongCells[] all = new AtomicLongCells[8];
+
+        for (int i = 0; i < all.length; i++) {
+            all[i] = unit.allocate(length);
+            all[i].set(0, i);
+            all[i].set(length - 1, i);
+        }
+
+        for (int i = 0; i < all.length; i++) {
+            Assert.assertEquals(i, all[i].get(0));
+            Assert.assertEquals(i, all[i].get(length - 1));
+        }
+
+        Assert.assertTrue(unit.getFootprint() >= 3L * OffHeapAggregateStore.CHUNK_SIZE);
+    }
+
+    /**
+     * Tests that histograms stored off-heap behave like heap histograms.
+     */
+    @Test
+    public void histogram() {
+        final LatencyHistogram heap = new LatencyHistogram();
+        final LatencyHistogram offHeap = new LatencyHistogram(
+            OffHeapAggregateStore.create().allocate(LatencyHistogram.CELLS));
+
+        for (long value = 1L; value < 1000000000L; value *= 3L) {
+            heap.record(value);
+            offHeap.record(value);
+        }
+
+        final HistogramSnapshot expected = heap.snapshot();
+        final HistogramSnapshot actual = offHeap.snapshot();
+        Assert.assertEquals(expected.getCount(), actual.getCount());
+        Assert.assertEquals(expected.getSum(), actual.getSum());
+        Assert.assertEquals(expected.getMin(), actual.getMin());
+        Assert.assertEquals(expected.getMax(), actual.getMax());
+        Assert.assertEquals(expected.getPercentile(99.0), actual.getPercentile(99.0));
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Guice;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Tests {@link Replay} and {@link RecordedCalls}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class ReplayTest {
+
+    /**
+     * A command which counts its executions and fails if asked to.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    @Singleton
+    public static final class CountingCommand implements IpcCommand {
+
+        private final AtomicInteger executions = new AtomicInteger();
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+            executions.incrementAndGet();
+            if ("true".equals(call.getArguments().get("fail"))) {
+                throw new IpcCommandExecutionException(new IllegalStateException("failed"));
+            }
+        }
+
+    }
+
+    /**
+     * A command which reads its arguments using typed getters.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    @Singleton
+    public static final class TypedCommand implements IpcCommand {
+
+        private final AtomicLong sum = new AtomicLong();
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+            final IpcArguments arguments = call.getArguments();
+            if (arguments.getBoolean("add")) {
+                final long value = arguments.getInt("int") + arguments.getLong("long");
+                sum.addAndGet(value + (long) arguments.getDouble("double"));
+            }
+        }
+
+    }
+
+    /**
+     * Tests writing and reading a recording.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final File file = File.createTempFile("recording", ".txt");
+
+        try {
+            final RecordedCall call = new RecordedCall(CountingCommand.class,
+                ImmutableMap.of("tenant", "a b\tc=d", "fail", "false"));
+            RecordedCalls.write(file, ImmutableList.of(call));
+
+            final List<RecordedCall> calls = RecordedCalls.read(file);
+            Assert.assertEquals(1, calls.size());
+            Assert.assertEquals(CountingCommand.class, calls.get(0).getCommand());
+            Assert.assertEquals(call.getArguments(), calls.get(0).getArguments());
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that every call is replayed once without a duration.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void once() throws InterruptedException {
+        final CommandRegistry registry = new CommandRegistry(Guice.createInjector());
+        final List<RecordedCall> calls = ImmutableList.of(
+            new RecordedCall(CountingCommand.class, ImmutableMap.of("fail", "false")),
+            new RecordedCall(CountingCommand.class, ImmutableMap.of("fail", "true")),
+            new RecordedCall(CountingCommand.class, ImmutableMap.of("fail", "false")));
+
+        final Replay unit = new Replay(calls, new InMemoryFilterChain(), registry);
+        unit.setConcurrency(2);
+        final ReplayReport report = unit.run();
+
+        Assert.assertEquals(3L, report.getCalls());
+        Assert.assertEquals(1L, report.getErrors());
+        Assert.assertEquals(3L, report.getCommands().get(CountingCommand.class).getCount());
+        Assert.assertEquals(3, CountingCommand.class.cast(registry.get(CountingCommand.class)).executions.get());
+    }
+
+    /**
+     * Tests that recorded string values are converted by typed getters and
+     * that missing or malformed arguments fail the call.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void typed() throws InterruptedException {
+        final CommandRegistry registry = new CommandRegistry(Guice.createInjector());
+        final List<RecordedCall> calls = ImmutableList.of(
+            new RecordedCall(TypedCommand.class,
+                ImmutableMap.of("add", "true", "int", "1", "long", "20", "double", "300.0")),
+            new RecordedCall(TypedCommand.class,
+                ImmutableMap.of("add", "false")),
+            new RecordedCall(TypedCommand.class,
+                ImmutableMap.of("add", "true", "int", "1", "long", "20")),
+            new RecordedCall(TypedCommand.class,
+                ImmutableMap.of("add", "true", "int", "one", "long", "20", "double", "300.0")));
+
+        final ReplayReport report = new Replay(calls, new InMemoryFilterChain(), registry).run();
+
+        Assert.assertEquals(4L, report.getCalls());
+        Assert.assertEquals(2L, report.getErrors());
+        Assert.assertEquals(321L, TypedCommand.class.cast(registry.get(TypedCommand.class)).sum.get());
+    }
+
+    /**
+     * Tests that typed getters of synthetic calls reject missing keys.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void missing() {
+        SyntheticCalls.of(ImmutableMap.<String, Object>of()).getArguments().getInt("missing");
+    }
+
+    /**
+     * Tests that the rate limits the number of replayed calls.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void rate() throws InterruptedException {
+        final List<RecordedCall> calls = ImmutableList.of(
+            new RecordedCall(CountingCommand.class, ImmutableMap.of("fail", "false")));
+
+        final Replay unit = new Replay(calls, new InMemoryFilterChain(),
+            new CommandRegistry(Guice.createInjector()));
+        unit.setRate(100.0);
+        unit.setDuration(200L, TimeUnit.MILLISECONDS);
+        final ReplayReport report = unit.run();
+
+        Assert.assertEquals(20L, report.getCalls());
+        Assert.assertEquals(0L, report.getErrors());
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.junit.UnitProvider;
+
+/**
+ * Tests {@link SlidingWindows}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class SlidingWindowsTest implements UnitProvider<SlidingWindows> {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1L);
+
+    // the start of an arbitrary minute
+    private static final long START = 1000L * MINUTE;
+
+    @Override
+    public SlidingWindows unit() {
+        return new SlidingWindows(new HeapAggregateStore());
+    }
+
+    /**
+     * Tests that a window covers the completed minutes and the current, partial one.
+     */
+    @Test
+    public void window() {
+        final SlidingWindows unit = unit();
+        unit.record(1000L, 1, START);
+        unit.record(2000L, 2, START + MINUTE);
+        unit.record(3000L, 3, START + 2 * MINUTE + 10L);
+
+        final long now = START + 2 * MINUTE + 30000L;
+        Assert.assertEquals(5L, unit.snapshot(1, now).getCount());
+        Assert.assertEquals(6L, unit.snapshot(2, now).getCount());
+        Assert.assertEquals(6L, unit.snapshot(SlidingWindows.MAX_MINUTES, now).getCount());
+        Assert.assertEquals(6000L, unit.snapshot(2, now).getHistogram().getSum());
+        // 5 calls over one full and half a minute
+        Assert.assertEquals(5.0 / 90.0, unit.snapshot(1, now).getRate(), 0.0001);
+    }
+
+    /**
+     * Tests that slots allocate all their cells from the store on first use only.
+     */
+    @Test
+    public void allocation() {
+        final AggregateStore store = new HeapAggregateStore();
+        final SlidingWindows unit = new SlidingWindows(store);
+        Assert.assertEquals(0L, store.getFootprint());
+
+        unit.record(1000L, 1, START);
+        final long slot = store.getFootprint();
+        Assert.assertTrue(slot > 0L);
+
+        unit.record(2000L, 1, START + 10L);
+        Assert.assertEquals(slot, store.getFootprint());
+
+        unit.record(3000L, 1, START + MINUTE);
+        Assert.assertEquals(2 * slot, store.getFootprint());
+    }
+
+    /**
+     * Tests that old minutes rotate out of the window without a reset.
+     */
+    @Test
+    public void rotation() {
+        final SlidingWindows unit = unit();
+        unit.record(1000L, 1, START);
+
+        final long later = START + SlidingWindows.MAX_MINUTES * MINUTE;
+        Assert.assertEquals(1L, unit.snapshot(SlidingWindows.MAX_MINUTES, later).getCount());
+        Assert.assertEquals(0L, unit.snapshot(SlidingWindows.MAX_MINUTES, later + MINUTE).getCount());
+        Assert.assertEquals(0L, unit.snapshot(1, START + 2 * MINUTE).getCount());
+    }
+
+    /**
+     * Tests that a slot is recycled when a new minute maps to it.
+     */
+    @Test
+    public void recycle() {
+        final SlidingWindows unit = unit();
+        unit.record(1000L, 7, START);
+
+        // maps to the same slot as START
+        final long next = START + (SlidingWindows.MAX_MINUTES + 1) * MINUTE;
+        unit.record(5000L, 1, next);
+
+        final WindowSnapshot snapshot = unit.snapshot(SlidingWindows.MAX_MINUTES, next);
+        Assert.assertEquals(1L, snapshot.getCount());
+        Assert.assertEquals(5000L, snapshot.getHistogram().getSum());
+        Assert.assertEquals(1L, snapshot.getHistogram().getCount());
+    }
+
+    /**
+     * Tests that reset discards all minutes.
+     */
+    @Test
+    public void reset() {
+        final SlidingWindows unit = unit();
+        unit.record(1000L, 1, START);
+        unit.reset();
+        Assert.assertEquals(0L, unit.snapshot(1, START).getCount());
+    }
+
+    /**
+     * Tests that windows longer than {@link SlidingWindows#MAX_MINUTES} are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLong() {
+        unit().snapshot(SlidingWindows.MAX_MINUTES + 1);
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+
+/**
+ * Tests {@link SlowestCalls}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class SlowestCallsTest implements UnitProvider<SlowestCalls> {
+
+    @Override
+    public SlowestCalls unit() {
+        return new SlowestCalls(3);
+    }
+
+    private IpcCall call(Object value) {
+        final IpcCall call = EasyMock.createMock("call", IpcCall.class);
+        final IpcArguments arguments = EasyMock.createMock("arguments", IpcArguments.class);
+        EasyMock.expect(arguments.entrySet()).andReturn(ImmutableMap.of("key", value).entrySet()).anyTimes();
+        EasyMock.expect(call.getArguments()).andReturn(arguments).anyTimes();
+        EasyMock.replay(call, arguments);
+        return call;
+    }
+
+    /**
+     * Tests that only the slowest calls are retained, slowest first.
+     */
+    @Test
+    public void retainsSlowest() {
+        final SlowestCalls unit = unit();
+        final long[] durations = {5L, 1L, 7L, 3L, 9L, 2L};
+        for (long duration : durations) {
+            unit.offer(duration, call(Long.valueOf(duration)));
+        }
+
+        final List<SlowCall> calls = unit.getCalls();
+        Assert.assertEquals(3, calls.size());
+        Assert.assertEquals(9L, calls.get(0).getDuration());
+        Assert.assertEquals(7L, calls.get(1).getDuration());
+        Assert.assertEquals(5L, calls.get(2).getDuration());
+        Assert.assertEquals("9", calls.get(0).getArguments().get("key"));
+    }
+
+    /**
+     * Tests that long argument values are truncated.
+     */
+    @Test
+    public void truncatesArguments() {
+        final SlowestCalls unit = unit();
+        final char[] value = new char[SlowestCalls.MAX_VALUE_LENGTH * 2];
+        Arrays.fill(value, 'x');
+        unit.offer(1L, call(new String(value)));
+        final String truncated = unit.getCalls().get(0).getArguments().get("key");
+        Assert.assertEquals(SlowestCalls.MAX_VALUE_LENGTH + BoundedRenderer.TRUNCATED.length(), truncated.length());
+    }
+
+    /**
+     * Tests that large collections are truncated as well.
+     */
+    @Test
+    public void truncatesCollections() {
+        final SlowestCalls unit = unit();
+        final List<Integer> value = Lists.newArrayList();
+        for (int i = 0; i < 10000; i++) {
+            value.add(i);
+        }
+        unit.offer(1L, call(value));
+        final String truncated = unit.getCalls().get(0).getArguments().get("key");
+        Assert.assertTrue(truncated.startsWith("[0, 1, 2"));
+        Assert.assertTrue(truncated.endsWith(BoundedRenderer.TRUNCATED));
+        Assert.assertEquals(SlowestCalls.MAX_VALUE_LENGTH + BoundedRenderer.TRUNCATED.length(), truncated.length());
+    }
+
+    /**
+     * Tests {@link SlowestCalls#clear()}.
+     */
+    @Test
+    public void clear() {
+        final SlowestCalls unit = unit();
+        unit.offer(1L, call("value"));
+        unit.clear();
+        Assert.assertTrue(unit.getCalls().isEmpty());
+    }
+
+}
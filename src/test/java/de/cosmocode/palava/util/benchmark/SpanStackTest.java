@@ -0,0 +1,94 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.junit.UnitProvider;
+
+/**
+ * Tests {@link SpanStack} and {@link Spans}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class SpanStackTest implements UnitProvider<SpanStack> {
+
+    @Override
+    public SpanStack unit() {
+        return new SpanStack();
+    }
+
+    /**
+     * Tests that spans outside of measured calls are no-ops.
+     */
+    @Test
+    public void inactive() {
+        Assert.assertSame(Span.NOOP, unit().open("child"));
+        Assert.assertSame(Span.NOOP, Spans.open("child"));
+    }
+
+    /**
+     * Tests building a tree of nested spans.
+     */
+    @Test
+    public void tree() {
+        final SpanStack unit = unit();
+        final Span root = unit.openRoot("root");
+
+        final Span first = unit.open("first");
+        unit.open("nested").close();
+        first.close();
+        unit.open("second").close();
+        final Span unclosed = unit.open("unclosed");
+
+        final TimingTree tree = unit.tree(root, System.nanoTime());
+        Assert.assertEquals("root", tree.getName());
+
+        final List<TimingTree> children = tree.getChildren();
+        Assert.assertEquals(3, children.size());
+        Assert.assertEquals("first", children.get(0).getName());
+        Assert.assertEquals("nested", children.get(0).getChildren().get(0).getName());
+        Assert.assertEquals("second", children.get(1).getName());
+        Assert.assertTrue(children.get(1).getOffset() >= children.get(0).getOffset());
+        Assert.assertEquals(TimingTree.UNKNOWN, children.get(2).getDuration());
+
+        unclosed.close();
+        root.close();
+        Assert.assertSame(Span.NOOP, unit.open("after"));
+    }
+
+    /**
+     * Tests that an exhausted pool hands out no-op spans.
+     */
+    @Test
+    public void exhausted() {
+        final SpanStack unit = unit();
+        final Span root = unit.openRoot("root");
+        for (int i = 1; i < SpanStack.CAPACITY; i++) {
+            final Span child = unit.open("child");
+            Assert.assertNotSame(Span.NOOP, child);
+            child.close();
+        }
+        Assert.assertSame(Span.NOOP, unit.open("overflow"));
+        Assert.assertEquals(SpanStack.CAPACITY - 1, unit.tree(root, System.nanoTime()).getChildren().size());
+    }
+
+}
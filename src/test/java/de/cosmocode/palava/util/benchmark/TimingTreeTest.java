@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.benchmark;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.cosmocode.junit.UnitProvider;
+
+/**
+ * Tests {@link TimingTree}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class TimingTreeTest implements UnitProvider<TimingTree> {
+
+    @Override
+    public TimingTree unit() {
+        final TimingTree nested = new TimingTree("c", 20L, 30L, ImmutableList.<TimingTree>of());
+        final TimingTree first = new TimingTree("a", 10L, 100L, ImmutableList.of(nested));
+        final TimingTree second = new TimingTree("b", 150L, TimingTree.UNKNOWN, ImmutableList.<TimingTree>of());
+        return new TimingTree("root", 0L, 300L, ImmutableList.of(first, second));
+    }
+
+    /**
+     * Tests the indented multi line representation.
+     */
+    @Test
+    public void appendTo() {
+        Assert.assertEquals("root +0ns 300ns\n  a +10ns 100ns\n    c +20ns 30ns\n  b +150ns unclosed",
+            unit().toString());
+    }
+
+    /**
+     * Tests the single line representation.
+     */
+    @Test
+    public void appendInline() {
+        final StringBuilder builder = new StringBuilder("spans ");
+        unit().appendInline(builder, 1024);
+        Assert.assertEquals("spans root +0ns 300ns [a +10ns 100ns [c +20ns 30ns], b +150ns unclosed]",
+            builder.toString());
+    }
+
+    /**
+     * Tests that the single line representation is truncated.
+     */
+    @Test
+    public void appendInlineTruncated() {
+        final StringBuilder builder = new StringBuilder("spans ");
+        unit().appendInline(builder, 20);
+        Assert.assertEquals("spans root +0ns 300ns [a +" + BoundedRenderer.TRUNCATED, builder.toString());
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.util.qa;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests the index written by the {@link CommandIndexProcessor}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CommandIndexProcessorTest {
+
+    private static final String SOURCE =
+        "package sample;\n" +
+        "import java.util.Map;\n" +
+        "import de.cosmocode.palava.ipc.IpcCall;\n" +
+        "import de.cosmocode.palava.ipc.IpcCommand;\n" +
+        "public class Sample implements IpcCommand {\n" +
+        "    public void execute(IpcCall call, Map<String, Object> result) { }\n" +
+        "    public static final class Nested extends Sample { }\n" +
+        "    public abstract static class Abstract implements IpcCommand { }\n" +
+        "    public static final class Other { }\n" +
+        "}\n";
+
+    private File directory;
+
+    /**
+     * Creates the source and output directory.
+     *
+     * @throws IOException if the directory could not be created
+     */
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("index", "");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(new File(directory, "sample").mkdirs());
+        write(new File(directory, "sample/Sample.java"), SOURCE);
+    }
+
+    /**
+     * Deletes the source and output directory.
+     */
+    @After
+    public void deleteDirectory() {
+        delete(directory);
+    }
+
+    private void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        Assert.assertTrue(file.delete());
+    }
+
+    private void write(File file, String content) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), CommandIndex.CHARSET);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<String> read(File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), CommandIndex.CHARSET));
+        try {
+            final List<String> lines = Lists.newArrayList();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void compile() throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+
+        final StandardJavaFileManager manager = compiler.getStandardFileManager(null, null, null);
+        try {
+            final List<String> options = Arrays.asList(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", directory.getPath());
+            final CompilationTask task = compiler.getTask(null, manager, null, options, null,
+                manager.getJavaFileObjects(new File(directory, "sample/Sample.java")));
+            task.setProcessors(Arrays.asList(new CommandIndexProcessor()));
+            Assert.assertTrue(task.call().booleanValue());
+        } finally {
+            manager.close();
+        }
+    }
+
+    /**
+     * Tests that all concrete commands, including nested ones, are indexed by binary name.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void index() throws IOException {
+        compile();
+
+        Assert.assertEquals(ImmutableList.of("sample.Sample", "sample.Sample$Nested"),
+            read(new File(directory, CommandIndex.LOCATION)));
+    }
+
+    /**
+     * Tests that entries of an existing index are kept only if their class still exists.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void incremental() throws IOException {
+        final File index = new File(directory, CommandIndex.LOCATION);
+        Assert.assertTrue(index.getParentFile().mkdirs());
+        write(index, "# comment\nsample.Removed\nde.cosmocode.palava.util.enums.ValuesOf\n");
+
+        compile();
+
+        Assert.assertEquals(ImmutableList.of("de.cosmocode.palava.util.enums.ValuesOf", "sample.Sample",
+            "sample.Sample$Nested"), read(index));
+    }
+
+}
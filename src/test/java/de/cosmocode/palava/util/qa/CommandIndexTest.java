@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.util.qa;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests {@link CommandIndex}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class CommandIndexTest {
+
+    /**
+     * Tests that scanning a class folder finds all concrete commands of the given packages.
+     * The only commands of this package are declared by the {@link UnusedFilterTest}.
+     *
+     * @throws URISyntaxException should not happen
+     */
+    @Test
+    public void scan() throws URISyntaxException {
+        final File root = new File(UnusedFilterTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        Assert.assertEquals(
+            ImmutableSet.of(UnusedFilterTest.First.class, UnusedFilterTest.Second.class),
+            CommandIndex.scan(root, ImmutableList.of(UnusedFilterTest.class.getPackage().getName())));
+    }
+
+    /**
+     * Tests that packages are matched as a whole.
+     *
+     * @throws URISyntaxException should not happen
+     */
+    @Test
+    public void scanPackagePrefix() throws URISyntaxException {
+        final File root = new File(UnusedFilterTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        Assert.assertTrue(CommandIndex.scan(root, ImmutableList.of("de.cosmocode.palava.util.q")).isEmpty());
+    }
+
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Tests {@link UnusedFilter}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class UnusedFilterTest implements UnitProvider<UnusedFilter> {
+
+    private static final IpcCallFilterChain CHAIN = new IpcCallFilterChain() {
+
+        @Override
+        public Map<String, Object> filter(IpcCall call, IpcCommand command) {
+            return Collections.emptyMap();
+        }
+
+    };
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Shuts the scheduler down.
+     */
+    @After
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public UnusedFilter unit() {
+        return new UnusedFilter(ImmutableList.of(getClass().getPackage().getName()), scheduler);
+    }
+
+    private void call(UnusedFilter unit, IpcCommand command) throws IpcCommandExecutionException {
+        // the call itself is not used by the filter
+        unit.filter(null, command, CHAIN);
+    }
+
+    /**
+     * Tests that listed commands are unused until they are called.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void unused() throws IpcCommandExecutionException {
+        final UnusedFilter unit = unit();
+        unit.publish(ImmutableSet.<Class<? extends IpcCommand>>of(First.class, Second.class));
+        Assert.assertEquals(ImmutableSet.of(First.class, Second.class), unit.getUnusedCommands());
+
+        call(unit, new First());
+        call(unit, new First());
+
+        Assert.assertEquals(ImmutableSet.of(Second.class), unit.getUnusedCommands());
+        Assert.assertEquals(2L, unit.history().getCounts().get(First.class.getName()).longValue());
+        Assert.assertEquals(0L, unit.history().getCounts().get(Second.class.getName()).longValue());
+    }
+
+    /**
+     * Tests that no command is reported as unused while commands are being listed.
+     */
+    @Test
+    public void listing() {
+        final UnusedFilter unit = unit();
+        Assert.assertEquals(ImmutableSet.of(), unit.getUnusedCommands());
+        Assert.assertEquals(ImmutableSet.of(), unit.getColdCommands());
+        Assert.assertNull(unit.history());
+    }
+
+    /**
+     * Tests that commands called while commands are being listed are marked as used
+     * once the listing is published.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void early() throws IpcCommandExecutionException {
+        final UnusedFilter unit = unit();
+        call(unit, new First());
+        Assert.assertEquals(ImmutableSet.of(), unit.getUnusedCommands());
+
+        unit.publish(ImmutableSet.<Class<? extends IpcCommand>>of(First.class, Second.class));
+
+        Assert.assertEquals(ImmutableSet.of(Second.class), unit.getUnusedCommands());
+        Assert.assertEquals(1L, unit.history().getCounts().get(First.class.getName()).longValue());
+    }
+
+    /**
+     * Tests that calls of several threads are all counted.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void threads() throws InterruptedException {
+        final UnusedFilter unit = unit();
+        unit.publish(ImmutableSet.<Class<? extends IpcCommand>>of(First.class, Second.class));
+
+        final int threads = 4;
+        final int calls = 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < calls; j++) {
+                            call(unit, new First());
+                        }
+                    } catch (IpcCommandExecutionException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+
+            }).start();
+        }
+
+        done.await();
+        Assert.assertEquals(threads * calls, unit.history().getCounts().get(First.class.getName()).longValue());
+    }
+
+    /**
+     * Tests that a restored history keeps its source, continues its counts and
+     * marks its called commands as used.
+     *
+     * @throws IOException should not happen
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void restore() throws IOException, IpcCommandExecutionException {
+        final File file = File.createTempFile("usage", ".bin");
+
+        try {
+            new UsageHistory("node", 1000L, 2000L,
+                ImmutableMap.of(First.class.getName(), 3L, Second.class.getName(), 0L),
+                ImmutableMap.of(First.class.getName(), 1500L)).write(file);
+
+            final UnusedFilter unit = unit();
+            unit.setHistoryFile(file);
+            unit.publish(ImmutableSet.<Class<? extends IpcCommand>>of(First.class, Second.class));
+
+            Assert.assertEquals(ImmutableSet.of(Second.class), unit.getUnusedCommands());
+
+            call(unit, new First());
+            call(unit, new Second());
+
+            final UsageHistory history = unit.history();
+            Assert.assertEquals(ImmutableSet.of("node"), history.getSourceIds());
+            Assert.assertEquals(1000L, history.getSince());
+            Assert.assertEquals(4L, history.getCounts().get(First.class.getName()).longValue());
+            Assert.assertEquals(1L, history.getCounts().get(Second.class.getName()).longValue());
+            Assert.assertEquals(ImmutableSet.of(), unit.getUnusedCommands());
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that commands whose restored last call is older than the cold age are
+     * reported as cold until they are called again.
+     *
+     * @throws IOException should not happen
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void cold() throws IOException, IpcCommandExecutionException {
+        final File file = File.createTempFile("usage", ".bin");
+        final long now = System.currentTimeMillis();
+
+        try {
+            new UsageHistory("node", 1000L, now,
+                ImmutableMap.of(First.class.getName(), 3L, Second.class.getName(), 2L),
+                ImmutableMap.of(First.class.getName(), 1500L, Second.class.getName(), now)).write(file);
+
+            final UnusedFilter unit = unit();
+            unit.setHistoryFile(file);
+            unit.publish(ImmutableSet.<Class<? extends IpcCommand>>of(First.class, Second.class));
+
+            Assert.assertEquals(ImmutableSet.of(First.class), unit.getColdCommands());
+
+            call(unit, new First());
+
+            Assert.assertEquals(ImmutableSet.of(), unit.getColdCommands());
+            Assert.assertEquals(ImmutableSet.of(), unit.getUnusedCommands());
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that a merged history is not restored, because its calls would
+     * be counted again when merging.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void restoreMerged() throws IOException {
+        final File file = File.createTempFile("usage", ".bin");
+
+        try {
+            new UsageHistory("first", 1000L, 2000L, ImmutableMap.of(First.class.getName(), 3L),
+                ImmutableMap.<String, Long>of()).merge(new UsageHistory("second", 1000L, 2000L,
+                ImmutableMap.of(First.class.getName(), 2L), ImmutableMap.<String, Long>of())).write(file);
+
+            final UnusedFilter unit = unit();
+            unit.setHistoryFile(file);
+            unit.publish(ImmutableSet.<Class<? extends IpcCommand>>of(First.class));
+
+            Assert.assertEquals(ImmutableSet.of(First.class), unit.getUnusedCommands());
+            Assert.assertEquals(0L, unit.history().getCounts().get(First.class.getName()).longValue());
+            Assert.assertEquals(1, unit.history().getSources());
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that calls of commands which have not been listed are ignored.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void unlisted() throws IpcCommandExecutionException {
+        final UnusedFilter unit = unit();
+        unit.publish(ImmutableSet.<Class<? extends IpcCommand>>of(First.class));
+
+        call(unit, new Second());
+
+        Assert.assertEquals(ImmutableSet.of(First.class), unit.getUnusedCommands());
+        Assert.assertFalse(unit.history().getCounts().containsKey(Second.class.getName()));
+    }
+
+    /**
+     * A command which does nothing.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    static final class First implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+
+        }
+
+    }
+
+    /**
+     * Another command which does nothing.
+     *
+     * @since 1.5
+     * @author Willi Schoenborn
+     */
+    static final class Second implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+
+        }
+
+    }
+
+}
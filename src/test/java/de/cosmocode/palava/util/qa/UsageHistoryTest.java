@@ -0,0 +1,161 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.util.qa;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests {@link UsageHistory}.
+ *
+ * @since 1.5
+ * @author Willi Schoenborn
+ */
+public final class UsageHistoryTest {
+
+    /**
+     * Tests writing and reading a history.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final UsageHistory history = new UsageHistory("node", 1000L, 2000L, ImmutableMap.of("a.A", 0L, "a.B", 17L),
+            ImmutableMap.of("a.B", 1900L));
+        final File file = File.createTempFile("usage", ".bin");
+
+        try {
+            history.write(file);
+            Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+
+            final UsageHistory read = UsageHistory.read(file);
+            Assert.assertEquals(1000L, read.getSince());
+            Assert.assertEquals(2000L, read.getUntil());
+            Assert.assertEquals(ImmutableSet.of("node"), read.getSourceIds());
+            Assert.assertEquals(history.getCounts(), read.getCounts());
+            Assert.assertEquals(ImmutableMap.of("a.B", 1900L), read.getLastUsed());
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that files of another version are rejected.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void version() throws IOException {
+        final File file = File.createTempFile("usage", ".bin");
+        final DataOutputStream output = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)));
+
+        try {
+            output.writeInt(UsageHistory.MAGIC);
+            output.writeInt(UsageHistory.VERSION + 1);
+        } finally {
+            output.close();
+        }
+
+        try {
+            UsageHistory.read(file);
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("unsupported version"));
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that merging histories of different sources unions commands, adds counts
+     * and keeps the later call time.
+     */
+    @Test
+    public void merge() {
+        final UsageHistory first = new UsageHistory("first", 1000L, 2000L, ImmutableMap.of("a.A", 0L, "a.B", 17L),
+            ImmutableMap.of("a.B", 1900L));
+        final UsageHistory second = new UsageHistory("second", 500L, 1500L, ImmutableMap.of("a.A", 3L, "a.C", 0L),
+            ImmutableMap.of("a.A", 1200L));
+        final UsageHistory merged = first.merge(second);
+
+        Assert.assertEquals(500L, merged.getSince());
+        Assert.assertEquals(2000L, merged.getUntil());
+        Assert.assertEquals(2, merged.getSources());
+        Assert.assertEquals(ImmutableMap.of("a.A", 3L, "a.B", 17L, "a.C", 0L), merged.getCounts());
+        Assert.assertEquals(ImmutableSet.of("a.C"), merged.getUnused());
+        Assert.assertEquals(ImmutableMap.of("a.A", 1200L, "a.B", 1900L), merged.getLastUsed());
+    }
+
+    /**
+     * Tests that merging two files of the same node keeps only the newer one, which
+     * already contains all calls of the older one.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void sameSource() throws IOException {
+        final UsageHistory monday = new UsageHistory("node", 1000L, 2000L, ImmutableMap.of("a.A", 5L, "a.B", 0L),
+            ImmutableMap.of("a.A", 1500L));
+        final UsageHistory tuesday = new UsageHistory("node", 1000L, 3000L, ImmutableMap.of("a.A", 8L, "a.B", 1L),
+            ImmutableMap.of("a.A", 2500L, "a.B", 2900L));
+        final UsageHistory other = new UsageHistory("other", 1500L, 2500L, ImmutableMap.of("a.A", 2L),
+            ImmutableMap.of("a.A", 2000L));
+        final File first = File.createTempFile("usage", ".bin");
+        final File second = File.createTempFile("usage", ".bin");
+
+        try {
+            monday.merge(other).write(first);
+            tuesday.write(second);
+
+            final UsageHistory merged = UsageHistory.read(first).merge(UsageHistory.read(second));
+            Assert.assertEquals(ImmutableSet.of("node", "other"), merged.getSourceIds());
+            Assert.assertEquals(1000L, merged.getSince());
+            Assert.assertEquals(3000L, merged.getUntil());
+            Assert.assertEquals(ImmutableMap.of("a.A", 10L, "a.B", 1L), merged.getCounts());
+            Assert.assertEquals(ImmutableMap.of("a.A", 2500L, "a.B", 2900L), merged.getLastUsed());
+
+            // the order of merging doesn't matter
+            Assert.assertEquals(merged.getCounts(), tuesday.merge(UsageHistory.read(first)).getCounts());
+        } finally {
+            Assert.assertTrue(first.delete());
+            Assert.assertTrue(second.delete());
+        }
+    }
+
+    /**
+     * Tests that only called commands without calls since the given time are cold.
+     */
+    @Test
+    public void cold() {
+        final UsageHistory history = new UsageHistory("node", 1000L, 2000L,
+            ImmutableMap.of("a.A", 0L, "a.B", 17L, "a.C", 5L), ImmutableMap.of("a.B", 1900L, "a.C", 1100L));
+
+        Assert.assertEquals(ImmutableSet.of("a.C"), history.getColdSince(1500L));
+        Assert.assertEquals(ImmutableSet.of(), history.getColdSince(1000L));
+        Assert.assertEquals(0L, history.getLastUsed("a.A"));
+    }
+
+}